@@ -1,3 +1,7 @@
+-- Устарело: схема создаётся миграциями Flyway при старте приложения
+-- (src/main/resources/db/migration). Этот файл оставлен как история ручных изменений
+-- и пример тестовых данных, изменения схемы сюда больше не добавляются.
+
 INSERT INTO person (name, age, email)
 VALUES ('Tom', 25, 'tom@mail.ru');
 INSERT INTO person (name, age, email)
@@ -0,0 +1,65 @@
+-- Планы запросов поиска людей до и после индексов из V3__person_search_indexes.sql.
+-- Запускать в отдельной пустой БД (psql -f), 1 000 000 строк.
+
+CREATE TABLE person_bench
+(
+    id    INT PRIMARY KEY,
+    name  VARCHAR(100) NOT NULL,
+    age   INT          NOT NULL,
+    email VARCHAR(100)
+);
+
+INSERT INTO person_bench (id, name, age, email)
+SELECT i, 'Person' || i, 18 + i % 60, 'person' || i || '@mail.ru'
+FROM generate_series(1, 1000000) AS i;
+ANALYZE person_bench;
+
+-- До: Seq Scan по всей таблице во всех трёх запросах
+EXPLAIN ANALYZE SELECT * FROM person_bench WHERE name LIKE 'Person12345%';
+EXPLAIN ANALYZE SELECT id, name, age FROM person_bench
+WHERE lower(name) LIKE 'person12%' OR lower(email) LIKE 'person12%' ORDER BY id LIMIT 20;
+EXPLAIN ANALYZE SELECT id, name, age FROM person_bench
+WHERE lower(name) LIKE '%son99999%' OR lower(email) LIKE '%son99999%' ORDER BY id LIMIT 20;
+
+CREATE INDEX ON person_bench (name text_pattern_ops);
+CREATE INDEX ON person_bench (lower(name) text_pattern_ops);
+CREATE INDEX ON person_bench (lower(email) text_pattern_ops);
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX ON person_bench USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX ON person_bench USING gin (lower(email) gin_trgm_ops);
+ANALYZE person_bench;
+
+-- После: Index Scan (text_pattern_ops) для префикса,
+-- Bitmap Index Scan по триграммным индексам для подстроки (BitmapOr по имени или email).
+-- Но поиск по имени или email с OR при ожидаемых ~20 000 совпадений - по-прежнему
+-- Index Scan по person_bench_pkey с фильтром: планировщик рассчитывает быстро набрать 20 строк
+EXPLAIN ANALYZE SELECT * FROM person_bench WHERE name LIKE 'Person12345%';
+EXPLAIN ANALYZE SELECT id, name, age FROM person_bench
+WHERE lower(name) LIKE 'person12%' OR lower(email) LIKE 'person12%' ORDER BY id LIMIT 20;
+EXPLAIN ANALYZE SELECT id, name, age FROM person_bench
+WHERE lower(name) LIKE '%son99999%' OR lower(email) LIKE '%son99999%' ORDER BY id LIMIT 20;
+
+-- Расчёт не оправдывается, если совпадения собраны в конце таблицы (например, новые записи):
+-- 30 000 Smith после миллиона Person. С OR - Index Scan по pkey, отброшен 1 000 000 строк.
+-- PeopleRepository.search - UNION двух запросов со своим limit: поиск по email идёт
+-- по индексу, по pkey с фильтром - только половина с именем (вдвое быстрее, но не мгновенно).
+-- Без limit в половинах UNION собрал бы все совпадения: на 'person%' - 2 000 000 строк и секунды
+INSERT INTO person_bench (id, name, age, email)
+SELECT i, 'Smith' || i, 18 + i % 60, 's' || i || '@mail.ru'
+FROM generate_series(1000001, 1030000) AS i;
+ANALYZE person_bench;
+
+EXPLAIN ANALYZE SELECT id, name, age FROM person_bench
+WHERE lower(name) LIKE 'smith%' OR lower(email) LIKE 'smith%' ORDER BY id LIMIT 20;
+EXPLAIN ANALYZE SELECT id, name, age FROM (
+    (SELECT id, name, age FROM person_bench WHERE lower(name) LIKE 'smith%' ORDER BY id LIMIT 20)
+    UNION
+    (SELECT id, name, age FROM person_bench WHERE lower(email) LIKE 'smith%' ORDER BY id LIMIT 20)
+) p ORDER BY id LIMIT 20;
+EXPLAIN ANALYZE SELECT id, name, age FROM (
+    (SELECT id, name, age FROM person_bench WHERE lower(name) LIKE 'person12%' ORDER BY id LIMIT 20)
+    UNION
+    (SELECT id, name, age FROM person_bench WHERE lower(email) LIKE 'person12%' ORDER BY id LIMIT 20)
+) p ORDER BY id LIMIT 20;
+
+DROP TABLE person_bench;
@@ -0,0 +1,253 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.FrameworkServlet;
+import ru.alexsem.springcourse.config.MySpringMvcDispatcherSerlvetIntitializer;
+import ru.alexsem.springcourse.config.SpringConfig;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Нагрузка на GET /people/{id} в настоящем контейнере (встроенный Tomcat) при медленной БД:
+ * каждый SQL-запрос выполняется на statementDelayMs дольше.
+ * У контейнера CONTAINER_THREADS потоков, у пула БД и requestExecutor - DB_CONNECTIONS.
+ * Одна операция - CLIENTS одновременных запросов (результат - запросов в секунду).
+ * async - обработчики как в приложении (CompletableFuture на requestExecutor),
+ * sync - requestExecutor выполняет задачу сразу в потоке контейнера, как обработчики до перехода на async:
+ * поток контейнера занят всё время запроса к БД.
+ * Кэши (страниц, второго уровня и запросов) ограничены одной записью, чтобы каждый запрос шёл в БД.
+ * После каждой итерации печатается число ответов по статусам и сколько SQL выполнялось одновременно
+ * (строка "# responses"): sync упирается в потоки контейнера, async - в пул БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(AsyncLoadBenchmark.CLIENTS)
+public class AsyncLoadBenchmark {
+    
+    static final int CLIENTS = 64;
+    private static final int CONTAINER_THREADS = 8;
+    private static final int DB_CONNECTIONS = 32;
+    private static final int PEOPLE = 1000;
+    
+    @Param({"async", "sync"})
+    public String handlers;
+    
+    @Param({"200"})
+    public int statementDelayMs;
+    
+    private Tomcat tomcat;
+    private HttpClient client;
+    private String baseUrl;
+    private int[] ids;
+    private final AtomicInteger ok = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    
+    @Setup(Level.Trial)
+    public void start() throws IOException, LifecycleException {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("maxThreads", CONTAINER_THREADS);
+        connector.setAttribute("minSpareThreads", CONTAINER_THREADS);
+        
+        Context context = tomcat.addContext("", new File("src/main/webapp").getAbsolutePath());
+        Initializer initializer = new Initializer("sync".equals(handlers));
+        context.addServletContainerInitializer((classes, servletContext) -> initializer.onStartup(servletContext), null);
+        tomcat.start();
+        
+        WebApplicationContext application = (WebApplicationContext) context.getServletContext()
+                .getAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + "dispatcher");
+        application.getBean(PeopleService.class).importPeople(IntStream.range(0, PEOPLE).mapToObj(i -> {
+            Person person = new Person("Person" + i, 18 + i % 60);
+            person.setEmail("person" + i + "@mail.ru");
+            return person;
+        }).iterator());
+        ids = application.getBean(PeopleRepository.class)
+                .findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, PageRequest.of(0, PEOPLE))
+                .stream().mapToInt(PersonSummary::getId).toArray();
+        SlowDatabase.delayMs = statementDelayMs;
+        
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + connector.getLocalPort() + "/people/";
+    }
+    
+    @TearDown(Level.Iteration)
+    public void printResponses() {
+        System.out.println("# responses: 200=" + ok.getAndSet(0) + " other=" + failed.getAndSet(0)
+                + " statements=" + SlowDatabase.executed.getAndSet(0)
+                + " maxConcurrentStatements=" + SlowDatabase.maxRunning.getAndSet(0));
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() throws LifecycleException {
+        SlowDatabase.delayMs = 0;
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Benchmark
+    public void showPerson() {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+            responses[i] = client.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + id)).build(),
+                            HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> (response.statusCode() == 200 ? ok : failed).incrementAndGet());
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+    
+    /**
+     * Инициализатор приложения (как в war) плюс медленная БД, отключённые кэши и размеры пулов
+     */
+    private static class Initializer extends MySpringMvcDispatcherSerlvetIntitializer {
+        
+        private final boolean sync;
+        
+        private Initializer(boolean sync) {
+            this.sync = sync;
+        }
+        
+        @Override
+        protected Class<?>[] getServletConfigClasses() {
+            return sync
+                    ? new Class[]{SpringConfig.class, SlowDatabase.class, SyncHandlers.class}
+                    : new Class[]{SpringConfig.class, SlowDatabase.class};
+        }
+        
+        @Override
+        protected WebApplicationContext createServletApplicationContext() {
+            AnnotationConfigWebApplicationContext context =
+                    (AnnotationConfigWebApplicationContext) super.createServletApplicationContext();
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("hibernate.connection.url", "jdbc:h2:mem:load;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+            properties.put("hibernate.hikari.maximumPoolSize", String.valueOf(DB_CONNECTIONS));
+            properties.put("hibernate.hikari.minimumIdle", String.valueOf(DB_CONNECTIONS));
+            properties.put("people.page_cache.max_size", "1");
+            properties.put("cache.person.max_size", "1");
+            properties.put("cache.default-query-results-region.max_size", "1");
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("load", properties));
+            return context;
+        }
+    }
+    
+    /**
+     * Медленная БД: перед каждым выполнением SQL поток ждёт delayMs
+     */
+    @Configuration
+    static class SlowDatabase {
+        
+        static volatile long delayMs;
+        static final AtomicInteger executed = new AtomicInteger();
+        static final AtomicInteger running = new AtomicInteger();
+        static final AtomicInteger maxRunning = new AtomicInteger();
+        
+        @Bean
+        public static BeanPostProcessor slowDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return "dataSource".equals(beanName) ? wrap(bean, DataSource.class) : bean;
+                }
+            };
+        }
+        
+        private static Object wrap(Object target, Class<?> type) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+                if (method.getName().startsWith("execute") && delayMs > 0) {
+                    executed.incrementAndGet();
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(delayMs);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection && method.getReturnType() == Connection.class) {
+                    return wrap(result, Connection.class);
+                }
+                if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    return wrap(result, method.getReturnType());
+                }
+                return result;
+            });
+        }
+    }
+    
+    /**
+     * Как до асинхронных обработчиков: вся работа - в потоке контейнера
+     */
+    @Configuration
+    static class SyncHandlers {
+        
+        @Bean
+        public ThreadPoolTaskExecutor requestExecutor() {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor() {
+                @Override
+                public void execute(Runnable task) {
+                    task.run();
+                }
+            };
+            executor.initialize();
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Удаление batch людей (у каждого itemsPerPerson вещей): по одному, как раньше
+ * (findById, отвязать вещи, remove - 2N+ запросов), и PeopleService.deleteAll (2 запроса).
+ * Перед каждым вызовом вставляем новых людей - сама вставка в замер не входит
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkDeleteBenchmark {
+    
+    @Param({"100"})
+    public int batch;
+    
+    private PeopleService peopleService;
+    private PeopleRepository peopleRepository;
+    private TransactionTemplate transactionTemplate;
+    private List<Integer> ids;
+    private int inserted;
+    
+    @Setup(Level.Trial)
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+    
+    @Setup(Level.Invocation)
+    public void insertBatch(SeededContext context) {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < batch; i++) {
+            Person person = new Person("Bulk" + i, 30);
+            person.setEmail("bulk" + inserted++ + "@mail.ru");
+            List<Item> items = new ArrayList<>();
+            for (int j = 0; j < context.itemsPerPerson; j++) {
+                items.add(new Item("Item" + j, person));
+            }
+            person.setItems(items);
+            people.add(person);
+        }
+        peopleService.importPeople(people.iterator());
+        ids = people.stream().map(Person::getId).collect(Collectors.toList());
+    }
+    
+    @Benchmark
+    public void perRow() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int id : ids) {
+                peopleRepository.findById(id).ifPresent(person -> {
+                    person.getItems().forEach(item -> item.setOwner(null));
+                    peopleRepository.delete(person);
+                });
+            }
+        });
+    }
+    
+    @Benchmark
+    public int bulk() {
+        return peopleService.deleteAll(ids);
+    }
+}
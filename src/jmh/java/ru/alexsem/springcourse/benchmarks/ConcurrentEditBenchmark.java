@@ -0,0 +1,135 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 8 потоков меняют одни и те же несколько строк (hot людей и их вещи).
+ *
+ * editPerson - как форма редактирования: прочитать версию, сохранить с ней (PeopleService.update).
+ * Часть сохранений получает конфликт версий. Ни одно сохранение не должно потеряться:
+ * после каждой итерации сумма версий hot людей выросла ровно на число успешных сохранений.
+ *
+ * moveItem - ItemsService.move с повтором при конфликте (OptimisticLockRetry):
+ * после всех попыток конфликтов почти не должно оставаться.
+ * Статистика печатается после каждой итерации (строки "# concurrent edit").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ConcurrentEditBenchmark {
+    
+    @Param({"5"})
+    public int hot;
+    
+    private PeopleService peopleService;
+    private ItemsService itemsService;
+    private PeopleRepository peopleRepository;
+    private MeterRegistry registry;
+    private int[] hotPeople;
+    private int[] hotItems;
+    private long baseVersions;
+    
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong moveFailures = new AtomicLong();
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        itemsService = context.getBean(ItemsService.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+        registry = context.getBean(MeterRegistry.class);
+        
+        hotPeople = peopleRepository.findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, PageRequest.of(0, hot))
+                .stream().mapToInt(PersonSummary::getId).toArray();
+        hotItems = Arrays.stream(hotPeople)
+                .flatMap(id -> itemsService.findOwnerItems(id, null, null).getContent().stream().mapToInt(Item::getId))
+                .toArray();
+        baseVersions = sumVersions();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void checkNoLostUpdates() {
+        long versions = sumVersions() - baseVersions;
+        System.out.println("# concurrent edit saved=" + saved.get() + " conflicts=" + conflicts.get()
+                + " versionIncrements=" + versions + " moved=" + moved.get() + " moveFailures=" + moveFailures.get()
+                + " retries=" + registry.get("optimistic_lock.retries").counter().count());
+        if (saved.get() > 0 && versions != saved.get()) {
+            throw new IllegalStateException("Lost updates: " + saved.get() + " saves, but versions grew by " + versions);
+        }
+    }
+    
+    @Benchmark
+    public boolean editPerson() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = hotPeople[random.nextInt(hotPeople.length)];
+        PersonDetails current = peopleService.findDetails(id);
+        
+//        Возраст меняется всегда: сохранение без изменений не увеличило бы version
+        Person edited = new Person("Edited" + random.nextInt(1000), current.getAge() + 1);
+        edited.setEmail(current.getEmail());
+        edited.setVersion(current.getVersion());
+        try {
+            peopleService.update(id, edited);
+            saved.incrementAndGet();
+            return true;
+        } catch (OptimisticLockingFailureException e) {
+            conflicts.incrementAndGet();
+            return false;
+        }
+    }
+    
+    @Benchmark
+    public boolean moveItem() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            itemsService.move(hotItems[random.nextInt(hotItems.length)], hotPeople[random.nextInt(hotPeople.length)]);
+            moved.incrementAndGet();
+            return true;
+        } catch (OptimisticLockingFailureException e) {
+            moveFailures.incrementAndGet();
+            return false;
+        }
+    }
+    
+    private long sumVersions() {
+        long sum = 0;
+        for (int id : hotPeople) {
+            sum += peopleService.findDetails(id).getVersion();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,91 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.alexsem.springcourse.config.ReadWriteRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузка на пул: 16 потоков, на каждую операцию - короткая транзакция с одним SELECT по id,
+ * как у чтения в PeopleService. hikari - пул из SpringConfig (hibernate.hikari.maximumPoolSize),
+ * driverManager - DriverManagerDataSource, который был до пула: новое соединение на каждую транзакцию.
+ * Время ожидания соединения из пула печатается после каждой итерации (строка "# pool").
+ *
+ * На H2 открыть соединение дёшево, выигрыш пула заметен только на настоящем PostgreSQL:
+ * -jvmArgsAppend "-Dhibernate.driver_class=org.postgresql.Driver -Dhibernate.connection.url=jdbc:postgresql://...
+ * -Dhibernate.connection.username=... -Dhibernate.connection.password=... -Dhibernate.dialect=org.hibernate.dialect.PostgreSQL10Dialect"
+ * (системные свойства важнее hibernate.properties)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ConnectionPoolBenchmark {
+    
+    @Param({"hikari", "driverManager"})
+    public String dataSource;
+    
+    private DataSource target;
+    private MeterRegistry registry;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        registry = context.getBean(MeterRegistry.class);
+        HikariDataSource pool = context.getBean(ReadWriteRoutingDataSource.class).getPrimary();
+        target = "hikari".equals(dataSource)
+                ? pool
+                : new DriverManagerDataSource(pool.getJdbcUrl(), pool.getUsername(), pool.getPassword());
+    }
+    
+    @TearDown(Level.Iteration)
+    public void printPoolStats() {
+        Timer acquire = registry.find("hikaricp.connections.acquire").tag("pool", "people-pool").timer();
+        if (acquire != null && "hikari".equals(dataSource)) {
+            System.out.println("# pool acquires=" + acquire.count()
+                    + " meanMs=" + acquire.mean(TimeUnit.MILLISECONDS)
+                    + " maxMs=" + acquire.max(TimeUnit.MILLISECONDS)
+                    + " timeouts=" + registry.get("hikaricp.connections.timeout").tag("pool", "people-pool")
+                    .counter().count());
+        }
+    }
+    
+    @Benchmark
+    public String findName(SeededContext context) throws SQLException {
+        try (Connection connection = target.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("select name from person where id = ?")) {
+                statement.setInt(1, context.randomId());
+                try (ResultSet rs = statement.executeQuery()) {
+                    String name = rs.next() ? rs.getString(1) : null;
+                    connection.commit();
+                    return name;
+                }
+            }
+        }
+    }
+}
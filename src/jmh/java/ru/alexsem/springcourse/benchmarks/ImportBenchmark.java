@@ -0,0 +1,73 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Строк в секунду при загрузке людей: PeopleService.importPeople (одна транзакция,
+ * JDBC batch-и, flush/clear каждые hibernate.jdbc.batch_size) против PeopleService.save
+ * на каждого (своя транзакция и INSERT на человека).
+ * Один вызов - ROWS людей, результат JMH (ops/s) - это строки в секунду.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+    
+    private static final int ROWS = 1000;
+    
+    private PeopleService peopleService;
+//    email уникален - у каждого загруженного свой
+    private int loaded;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int importPeople() {
+        return peopleService.importPeople(generate());
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int saveOneByOne() {
+        Iterator<Person> people = generate();
+        int saved = 0;
+        while (people.hasNext()) {
+            peopleService.save(people.next());
+            saved++;
+        }
+        return saved;
+    }
+    
+    private Iterator<Person> generate() {
+        return IntStream.range(0, ROWS).mapToObj(i -> {
+            Person person = new Person("Imported" + i, 18 + i % 60);
+            person.setEmail("imported" + loaded++ + "@mail.ru");
+            person.setItems(new ArrayList<>());
+            return person;
+        }).iterator();
+    }
+}
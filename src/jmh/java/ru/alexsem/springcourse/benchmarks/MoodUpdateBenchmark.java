@@ -0,0 +1,82 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.TaskRejectedException;
+import ru.alexsem.springcourse.dao.PersonMoodDAO;
+import ru.alexsem.springcourse.models.Mood;
+import ru.alexsem.springcourse.services.MoodUpdateBuffer;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Смена настроения из 4 потоков: транзакция и UPDATE на каждое изменение (как mood.buffer.write_through=true)
+ * и через MoodUpdateBuffer (запись пачками в фоне).
+ * Для buffered замеряется только время запроса; сколько пачек записано и за сколько,
+ * сколько изменений схлопнулось и отклонено - печатается в конце (строки "# mood.buffer").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class MoodUpdateBenchmark {
+    
+    private static final Mood[] MOODS = Mood.values();
+    
+    private PersonMoodDAO personMoodDAO;
+    private MoodUpdateBuffer moodUpdateBuffer;
+    private MeterRegistry registry;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        personMoodDAO = context.getBean(PersonMoodDAO.class);
+        moodUpdateBuffer = context.getBean(MoodUpdateBuffer.class);
+        registry = context.getBean(MeterRegistry.class);
+    }
+    
+    @TearDown
+    public void printBufferStats() {
+        Timer flush = registry.get("mood.buffer.flush").timer();
+        System.out.println("# mood.buffer flushes=" + flush.count()
+                + " meanMs=" + flush.mean(TimeUnit.MILLISECONDS)
+                + " maxMs=" + flush.max(TimeUnit.MILLISECONDS)
+                + " coalesced=" + registry.get("mood.buffer.coalesced").counter().count()
+                + " rejected=" + registry.get("mood.buffer.rejected").counter().count());
+    }
+    
+    @Benchmark
+    public void writeThrough(SeededContext context) {
+        personMoodDAO.updateMoods(Map.of(context.randomId(), randomMood()));
+    }
+    
+    @Benchmark
+    public boolean buffered(SeededContext context) {
+        try {
+            moodUpdateBuffer.offer(context.randomId(), randomMood());
+            return true;
+        } catch (TaskRejectedException e) {
+            return false;
+        }
+    }
+    
+    private static Mood randomMood() {
+        return MOODS[ThreadLocalRandom.current().nextInt(MOODS.length)];
+    }
+}
@@ -0,0 +1,97 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.alexsem.springcourse.io.GzipResponseFilter;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Страница из 100 человек: HTML (PeopleController, без кэша страниц) и JSON API
+ * (PeopleRestController) - без сжатия и с gzip, а также условный GET (304).
+ * Запросы идут через MockMvc - весь стек Spring MVC, но без HTTP и сети.
+ * Размер ответа каждого варианта печатается в начале (строки "# payload").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleApiBenchmark {
+    
+    private static final int PAGE_SIZE = 100;
+    
+    private MockMvc mockMvc;
+    
+    @Setup
+    public void setUp(SeededContext context) throws Exception {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context.getContext())
+                .addFilter(context.getBean(GzipResponseFilter.class), "/api/*")
+                .build();
+        
+        int after = context.randomId();
+        System.out.println("# payload html      " + perform(get("/people?size=" + PAGE_SIZE + "&after=" + after))
+                .getContentAsByteArray().length + " bytes");
+        System.out.println("# payload json      " + perform(get("/api/people?size=" + PAGE_SIZE + "&after=" + after))
+                .getContentAsByteArray().length + " bytes");
+        System.out.println("# payload json+gzip " + perform(get("/api/people?size=" + PAGE_SIZE + "&after=" + after)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")).getContentAsByteArray().length + " bytes");
+    }
+    
+    @Benchmark
+    public MockHttpServletResponse html(SeededContext context) throws Exception {
+        return perform(get("/people?size=" + PAGE_SIZE + "&after=" + context.randomId()));
+    }
+    
+    @Benchmark
+    public MockHttpServletResponse json(SeededContext context) throws Exception {
+        return perform(get("/api/people?size=" + PAGE_SIZE + "&after=" + context.randomId()));
+    }
+    
+    @Benchmark
+    public MockHttpServletResponse jsonGzip(SeededContext context) throws Exception {
+        return perform(get("/api/people?size=" + PAGE_SIZE + "&after=" + context.randomId())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+    }
+    
+    @Benchmark
+    public MockHttpServletResponse jsonShow(SeededContext context) throws Exception {
+        return perform(get("/api/people/" + context.randomId()));
+    }
+    
+    /**
+     * Все засеянные люди в версии 0 - клиент уже видел эту версию, ответ 304 без тела
+     */
+    @Benchmark
+    public MockHttpServletResponse jsonShowNotModified(SeededContext context) throws Exception {
+        return perform(get("/api/people/" + context.randomId()).header(HttpHeaders.IF_NONE_MATCH, "W/\"0\""));
+    }
+    
+    //    Асинхронные обработчики PeopleController дописывают ответ во втором (ASYNC) dispatch
+    private MockHttpServletResponse perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result.getAsyncResult();
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse();
+    }
+}
@@ -0,0 +1,98 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.hibernate.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.dao.ProblemNPlus1DAO;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.monitoring.QueryCounter;
+import ru.alexsem.springcourse.monitoring.QueryStats;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение для GET /people до и после перехода на проекцию PersonSummary.
+ * before - как было: PeopleService.findAll() в одной readOnly транзакции вызывал
+ * ProblemNPlus1DAO.testNPlus1() (join fetch всей таблицы и печать в stdout) и peopleRepository.findAll().
+ * after - PeopleService.findPage(): один запрос id, name, age на страницу.
+ *
+ * После каждой итерации печатается число SQL на один запрос с пустыми кэшами Hibernate
+ * (строка "# statements per request"). stdout на время замеров отключён, чтобы печать
+ * testNPlus1 не засоряла вывод JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleIndexQueryBenchmark {
+    
+    private PeopleService peopleService;
+    private PeopleRepository peopleRepository;
+    private ProblemNPlus1DAO problemNPlus1DAO;
+    private TransactionTemplate readOnlyTransaction;
+    private Cache cache;
+    private PrintStream out;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+        problemNPlus1DAO = context.getBean(ProblemNPlus1DAO.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+        cache = context.getBean(EntityManagerFactory.class).getCache().unwrap(Cache.class);
+    
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+    
+    @TearDown
+    public void restoreStdout() {
+        System.setOut(out);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void printStatements() {
+        cache.evictAllRegions();
+        QueryStats before = QueryCounter.measure(this::before);
+        cache.evictAllRegions();
+        QueryStats after = QueryCounter.measure(this::after);
+        out.println("# statements per request: before=" + before.getStatements()
+                + " after=" + after.getStatements());
+    }
+    
+    @Benchmark
+    public List<Person> before() {
+        return readOnlyTransaction.execute(status -> {
+            problemNPlus1DAO.testNPlus1();
+            return peopleRepository.findAll();
+        });
+    }
+    
+    @Benchmark
+    public KeysetPage<PersonSummary> after() {
+        return peopleService.findPage(null, null, null);
+    }
+}
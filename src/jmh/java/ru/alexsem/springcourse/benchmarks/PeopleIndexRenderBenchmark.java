@@ -0,0 +1,189 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.ViewResolver;
+import org.thymeleaf.spring5.view.ThymeleafView;
+import ru.alexsem.springcourse.config.SpringConfig;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Отрисовка people/index.html: шаблон пишется в поток ответа по мере обработки
+ * (partialOutput=true, по умолчанию у ThymeleafViewResolver) или сначала целиком в строку.
+ * Размеры страниц - те, что приложение отдаёт: 20 (people.page_size), 100 (people.page_cache.max_page_size:
+ * страницы до этого размера целиком буферизует PeoplePageCacheFilter, так что клиенту они уходят
+ * только после отрисовки) и 200 (people.page_size.max).
+ *
+ * timeToFirstByte - время до отправки первых байт клиенту: ответ, как в контейнере,
+ * уходит блоками по 8 КБ (размер буфера ответа Tomcat по умолчанию).
+ * fullRender - время всей отрисовки. Память - -prof gc, gc.alloc.rate.norm (байт на вызов).
+ * БД не используется: страница собирается в памяти
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleIndexRenderBenchmark {
+    
+    @Param({"20", "100", "200"})
+    public int rows;
+    
+    @Param({"true", "false"})
+    public boolean partialOutput;
+    
+    private AnnotationConfigWebApplicationContext context;
+    private ThymeleafView view;
+    private Map<String, Object> model;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext("src/main/webapp", new FileSystemResourceLoader()));
+        context.register(SpringConfig.class);
+        context.refresh();
+        
+        view = (ThymeleafView) context.getBean("mvcViewResolver", ViewResolver.class)
+                .resolveViewName("people/index", Locale.ROOT);
+        view.setProducePartialOutputWhileProcessing(partialOutput);
+        
+        List<PersonDetails> people = IntStream.range(0, rows)
+                .mapToObj(i -> new PersonDetails(i + 1, "Person" + i, 18 + i % 60, null, 0))
+                .collect(Collectors.toList());
+        model = Map.of("page", new KeysetPage<>(people, rows, rows, null));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    @Benchmark
+    public long timeToFirstByte() throws Exception {
+        ContainerWriter writer = new ContainerWriter(true);
+        try {
+            render(writer);
+        } catch (RuntimeException e) {
+            if (!isFirstByteSent(e)) {
+                throw e;
+            }
+        }
+        return writer.sent;
+    }
+    
+    @Benchmark
+    public long fullRender() throws Exception {
+        ContainerWriter writer = new ContainerWriter(false);
+        render(writer);
+        return writer.sent;
+    }
+    
+    private void render(Writer writer) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(context.getServletContext(), "GET", "/people");
+        request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+        view.render(model, request, new StreamingResponse(writer));
+    }
+    
+    private static boolean isFirstByteSent(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause == FirstByteSent.INSTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    //    MockHttpServletResponse копит всё тело в памяти - подменяем writer
+    private static class StreamingResponse extends MockHttpServletResponse {
+        
+        private final PrintWriter writer;
+        
+        StreamingResponse(Writer writer) {
+            this.writer = new PrintWriter(writer);
+        }
+        
+        @Override
+        public PrintWriter getWriter() {
+            return writer;
+        }
+    }
+    
+    //    Буфер ответа контейнера: клиент получает данные, когда буфер заполнен или при flush
+    private static class ContainerWriter extends Writer {
+        
+        private static final int BUFFER_SIZE = 8192;
+        
+        private final boolean stopAtFirstByte;
+        private int buffered;
+        private long sent;
+        
+        ContainerWriter(boolean stopAtFirstByte) {
+            this.stopAtFirstByte = stopAtFirstByte;
+        }
+        
+        @Override
+        public void write(char[] chars, int off, int len) {
+            buffered += len;
+            if (buffered >= BUFFER_SIZE) {
+                send();
+            }
+        }
+        
+        @Override
+        public void flush() {
+            if (buffered > 0) {
+                send();
+            }
+        }
+        
+        @Override
+        public void close() {
+            flush();
+        }
+        
+        private void send() {
+            sent += buffered;
+            buffered = 0;
+            if (stopAtFirstByte) {
+                throw FirstByteSent.INSTANCE;
+            }
+        }
+    }
+    
+    private static class FirstByteSent extends RuntimeException {
+        
+        private static final FirstByteSent INSTANCE = new FirstByteSent();
+        
+        private FirstByteSent() {
+            super("first byte sent", null, false, false);
+        }
+    }
+}
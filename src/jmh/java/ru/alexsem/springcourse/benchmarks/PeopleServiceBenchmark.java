@@ -0,0 +1,141 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.alexsem.springcourse.dto.ItemNameCount;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.OwnerItemCount;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение и запись через сервисный слой и производные запросы репозиториев
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleServiceBenchmark {
+    
+    private PeopleService peopleService;
+    private ItemsService itemsService;
+    private PeopleRepository peopleRepository;
+    private int saved;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        itemsService = context.getBean(ItemsService.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+    }
+    
+    @Benchmark
+    public List<Person> findAll() {
+        return peopleService.findAll();
+    }
+    
+    @Benchmark
+    public KeysetPage<PersonSummary> findPage(SeededContext context) {
+        return peopleService.findPage(context.randomId(), null, null);
+    }
+    
+    @Benchmark
+    public KeysetPage<Person> findPageWithItems(SeededContext context) {
+        return peopleService.findPageWithItems(context.randomId(), null, null);
+    }
+    
+    @Benchmark
+    public Person findOne(SeededContext context) {
+        return peopleService.findOne(context.randomId());
+    }
+    
+    /**
+     * Сравнение с findOne по памяти: -prof gc, метрика gc.alloc.rate.norm (байт на вызов)
+     */
+    @Benchmark
+    public PersonDetails findDetails(SeededContext context) {
+        return peopleService.findDetails(context.randomId());
+    }
+    
+    @Benchmark
+    public List<Person> findByNameStartingWith() {
+        return peopleRepository.findByNameStartingWith("Person" + ThreadLocalRandom.current().nextInt(100));
+    }
+    
+    @Benchmark
+    public List<Item> findByOwner(SeededContext context) {
+        Person owner = new Person();
+        owner.setId(context.randomId());
+        return itemsService.findByOwner(owner);
+    }
+    
+    @Benchmark
+    public KeysetPage<Item> findOwnerItems(SeededContext context) {
+        return itemsService.findOwnerItems(context.randomId(), null, null);
+    }
+    
+    /**
+     * Агрегаты (group by в БД). Без записей между вызовами результат берётся из кэша запросов
+     */
+    @Benchmark
+    public KeysetPage<OwnerItemCount> countItemsByOwner(SeededContext context) {
+        return itemsService.countItemsByOwner(context.randomId(), null);
+    }
+    
+    @Benchmark
+    public List<OwnerItemCount> findTopOwners() {
+        return itemsService.findTopOwners(10);
+    }
+    
+    @Benchmark
+    public List<ItemNameCount> countByItemName() {
+        return itemsService.countByItemName(10);
+    }
+    
+    //    email уникален (индекс person_email_key), поэтому у каждого сохранённого свой
+    @Benchmark
+    public int save() {
+        Person person = new Person("Benchmark", 30);
+        person.setEmail("benchmark" + saved++ + "@mail.ru");
+        peopleService.save(person);
+        return person.getId();
+    }
+    
+    @Benchmark
+    public void update(SeededContext context) {
+        int id = context.randomId();
+        Person person = peopleService.findOne(id);
+        person.setAge(person.getAge() + 1);
+        peopleService.update(id, person);
+    }
+    
+    /**
+     * Удаление - вместе с созданием, иначе за время измерения закончились бы записи
+     */
+    @Benchmark
+    public void saveAndDelete() {
+        Person person = new Person("Benchmark", 30);
+        person.setEmail("benchmark@mail.ru");
+        peopleService.save(person);
+        peopleService.delete(person.getId());
+    }
+}
@@ -0,0 +1,77 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.dao.PersonReportDAO;
+import ru.alexsem.springcourse.dto.AgeCount;
+import ru.alexsem.springcourse.dto.DailyCount;
+import ru.alexsem.springcourse.models.Mood;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.EntityManager;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение всех людей с настроением CALM (при сидировании - все люди):
+ * обычная сессия в readOnly-транзакции (session.createQuery, как в PersonDAO.index)
+ * и StatelessSession со scroll проекции PersonDetails (PersonReportDAO). Смотреть на gc.alloc.rate.norm: -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonReportBenchmark {
+    
+    private PersonReportDAO reportDAO;
+    private EntityManager entityManager;
+    private TransactionTemplate readOnlyTransaction;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        reportDAO = context.getBean(PersonReportDAO.class);
+        entityManager = context.getBean(EntityManager.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+    }
+    
+    @Benchmark
+    public int moodScanSession(Blackhole blackhole) {
+        List<Person> people = readOnlyTransaction.execute(status -> entityManager.unwrap(Session.class)
+                .createQuery("select p from Person p where p.mood = :mood order by p.id", Person.class)
+                .setParameter("mood", Mood.CALM)
+                .getResultList());
+        people.forEach(blackhole::consume);
+        return people.size();
+    }
+    
+    @Benchmark
+    public long moodScanStateless(Blackhole blackhole) {
+        return reportDAO.forEachWithMood(Mood.CALM, blackhole::consume);
+    }
+    
+    @Benchmark
+    public List<AgeCount> ageDistribution() {
+        return reportDAO.ageDistribution();
+    }
+    
+    @Benchmark
+    public List<DailyCount> createdPerDay() {
+        return reportDAO.createdPerDay(new Date(0), new Date(System.currentTimeMillis() + 1));
+    }
+}
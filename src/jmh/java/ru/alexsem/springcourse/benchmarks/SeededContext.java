@@ -0,0 +1,88 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.config.SpringConfig;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Поднимает настоящий SpringConfig на встроенной H2 (см. src/test/resources/hibernate.properties)
+ * и заполняет БД заданным количеством людей и вещей.
+ * Объём данных задаётся параметрами JMH: -p people=100000 -p itemsPerPerson=5
+ */
+@State(Scope.Benchmark)
+public class SeededContext {
+    
+    @Param({"1000", "100000"})
+    public int people;
+    
+    @Param({"3"})
+    public int itemsPerPerson;
+    
+    private AnnotationConfigWebApplicationContext context;
+    private int[] ids;
+    
+    @Setup(Level.Trial)
+    public void start() {
+        context = new AnnotationConfigWebApplicationContext();
+//        Шаблоны из src/main/webapp - для бенчмарков через MockMvc (PeopleApiBenchmark)
+        context.setServletContext(new MockServletContext("src/main/webapp", new FileSystemResourceLoader()));
+        context.register(SpringConfig.class);
+        context.refresh();
+        
+        getBean(PeopleService.class).importPeople(generate(people));
+        
+        List<PersonSummary> seeded = getBean(PeopleRepository.class)
+                .findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, PageRequest.of(0, people));
+        ids = seeded.stream().mapToInt(PersonSummary::getId).toArray();
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+    
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+    
+    public WebApplicationContext getContext() {
+        return context;
+    }
+    
+    public int randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+    
+    public Iterator<Person> generate(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            Person person = new Person("Person" + i, 18 + i % 60);
+            person.setEmail("person" + i + "@mail.ru");
+            List<Item> items = new ArrayList<>();
+            for (int j = 0; j < itemsPerPerson; j++) {
+                items.add(new Item("Item" + j, person));
+            }
+            person.setItems(items);
+            return person;
+        }).iterator();
+    }
+}
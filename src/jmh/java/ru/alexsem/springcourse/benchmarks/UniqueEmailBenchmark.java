@@ -0,0 +1,95 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.DuplicateEmailException;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочная проверка уникальности email: 8 потоков создают людей (PeopleService.save)
+ * и делают upsert (PeopleService.upsertByEmail) с email из небольшого набора (emails),
+ * так что одновременные запросы с одним email - обычное дело.
+ * После каждой итерации в БД не должно быть двух людей с одним email - иначе бенчмарк падает.
+ * Сколько раз save получил DuplicateEmailException - печатается (строки "# unique email").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class UniqueEmailBenchmark {
+    
+    @Param({"50"})
+    public int emails;
+    
+    private PeopleService peopleService;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        entityManager = context.getBean(EntityManager.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+    
+    @TearDown(Level.Iteration)
+    public void checkNoDuplicates() {
+        List<?> duplicated = transactionTemplate.execute(status -> entityManager
+                .createQuery("select p.email from Person p group by p.email having count(p) > 1")
+                .getResultList());
+        System.out.println("# unique email created=" + created.get() + " duplicateRejected=" + duplicates.get());
+        if (!duplicated.isEmpty()) {
+            throw new IllegalStateException("Duplicate emails in person: " + duplicated);
+        }
+    }
+    
+    @Benchmark
+    public boolean save() {
+        try {
+            peopleService.save(randomPerson());
+            created.incrementAndGet();
+            return true;
+        } catch (DuplicateEmailException e) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+    }
+    
+    @Benchmark
+    public int upsert() {
+        return peopleService.upsertByEmail(randomPerson());
+    }
+    
+    private Person randomPerson() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Person person = new Person("Race" + random.nextInt(1000), 18 + random.nextInt(60));
+        person.setEmail("race" + random.nextInt(emails) + "@mail.ru");
+        return person;
+    }
+}
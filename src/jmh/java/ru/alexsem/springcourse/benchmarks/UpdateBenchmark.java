@@ -0,0 +1,119 @@
+package ru.alexsem.springcourse.benchmarks;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.monitoring.QueryCounter;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PeopleService.update: задержка и число SQL на одно изменение формы.
+ * cached - человек уже в кэше второго уровня (обычный случай: его только что показали),
+ * notCached - запись перед изменением вытеснена из кэша.
+ * После каждой итерации печатается число SQL на одно изменение и сколько из изменяемых людей
+ * осталось в кэше второго уровня после изменения одного из них (строка "# update"):
+ * изменение не должно сбрасывать весь регион person.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+    
+    private static final int EDITED = 100;
+    
+    private PeopleService peopleService;
+    private Cache cache;
+    private PersonDetails[] people;
+    private int[] versions;
+    private int next;
+    
+    @Setup
+    public void setUp(SeededContext context) {
+        peopleService = context.getBean(PeopleService.class);
+        cache = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache();
+        
+        List<PersonSummary> edited = context.getBean(PeopleRepository.class)
+                .findByIdGreaterThanOrderByIdAsc(Integer.MIN_VALUE, PageRequest.of(0, EDITED));
+        people = new PersonDetails[edited.size()];
+        versions = new int[edited.size()];
+        for (int i = 0; i < people.length; i++) {
+            people[i] = peopleService.findDetails(edited.get(i).getId());
+            versions[i] = people[i].getVersion();
+        }
+    }
+    
+    @TearDown(Level.Iteration)
+    public void printStatements() {
+        for (PersonDetails person : people) {
+            peopleService.findOne(person.getId());
+        }
+        int cached = QueryCounter.measure(this::cached).getStatements();
+        int stillCached = cachedPeople();
+        int notCached = QueryCounter.measure(this::notCached).getStatements();
+        System.out.println("# update statements: cached=" + cached + " notCached=" + notCached
+                + " peopleInCache=" + stillCached + "/" + people.length);
+    }
+    
+    @Benchmark
+    public int cached() {
+        int i = nextPerson();
+//        Чтение через findOne кладёт человека в кэш второго уровня
+        peopleService.findOne(people[i].getId());
+        return update(i);
+    }
+    
+    @Benchmark
+    public int notCached() {
+        int i = nextPerson();
+        cache.evictEntityData(Person.class, people[i].getId());
+        return update(i);
+    }
+    
+    private int update(int i) {
+        PersonDetails person = people[i];
+//        Возраст меняется каждый раз, иначе UPDATE не понадобился бы и version не выросла бы
+        Person form = new Person(person.getName(), person.getAge() + (versions[i] - person.getVersion() + 1) % 2);
+        form.setEmail(person.getEmail());
+        form.setVersion(versions[i]);
+        versions[i] = peopleService.update(person.getId(), form);
+        return versions[i];
+    }
+    
+    private int nextPerson() {
+        next = (next + 1) % people.length;
+        return next;
+    }
+    
+    private int cachedPeople() {
+        int count = 0;
+        for (PersonDetails person : people) {
+            if (cache.containsEntity(Person.class, person.getId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
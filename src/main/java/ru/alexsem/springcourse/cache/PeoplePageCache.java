@@ -0,0 +1,183 @@
+package ru.alexsem.springcourse.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.alexsem.springcourse.dto.KeysetPage;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш готовых HTML-страниц /people и /people/{id} (см. PeoplePageCacheFilter).
+ * Caffeine (W-TinyLFU), не больше people.page_cache.max_size страниц.
+ *
+ * Каждая страница знает диапазон id, который она показывает (keyset пагинация:
+ * страница "после id=X" - это id из (X, последний на странице]).
+ * Изменение человека с id сбрасывает только страницы, в диапазон которых он попадает:
+ * его /people/{id} и одну страницу списка.
+ * Сброс происходит после коммита транзакции - до коммита страницу отрисовали бы со старыми данными.
+ * Страницы, отрисованные до сброса, в кэш уже не попадут (см. generation()).
+ * Страницы, прочитанные с реплики, в кэш не кладутся: реплика могла ещё не получить изменение,
+ * после которого страницу сбросили. Страница в любом случае живёт не дольше people.page_cache.ttl_seconds.
+ */
+@Component
+public class PeoplePageCache {
+    
+    private static final String ID_RANGE_ATTRIBUTE = PeoplePageCache.class.getName() + ".ID_RANGE";
+    
+    private final Cache<String, CachedPage> pages;
+//    Увеличивается при каждом сбросе
+    private final AtomicLong generation = new AtomicLong();
+    
+    @Autowired
+    public PeoplePageCache(@Value("${people.page_cache.max_size:10000}") long maxSize,
+                           @Value("${people.page_cache.ttl_seconds:300}") long ttlSeconds,
+                           MeterRegistry registry) {
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+//        cache_gets, cache_evictions и т.д. с тегом cache=people.pages в /metrics
+        CaffeineCacheMetrics.monitor(registry, pages, "people.pages");
+    }
+    
+    /**
+     * Контроллер помечает страницу как кэшируемую: её можно положить в кэш,
+     * и сбрасывать её нужно при изменении любого человека с id из [fromId, toId]
+     */
+    public static void markCacheable(HttpServletRequest request, int fromId, int toId) {
+        request.setAttribute(ID_RANGE_ATTRIBUTE, new int[]{fromId, toId});
+    }
+    
+    /**
+     * Диапазон id страницы списка людей.
+     * Если записей дальше нет, новый человек появится на этой странице, поэтому граница - бесконечность.
+     * before - 1 и after + 1 на границах int не переполняются.
+     *
+     * @param after  параметр запроса after
+     * @param before параметр запроса before
+     * @param page   найденная страница (курсоры - id первой и последней записи)
+     */
+    public static void markCacheable(HttpServletRequest request, Integer after, Integer before, KeysetPage<?> page) {
+        if (before != null) {
+            markCacheable(request, page.hasPrevious() ? page.getPreviousCursor() : Integer.MIN_VALUE,
+                    before == Integer.MIN_VALUE ? before : before - 1);
+        } else {
+            int from = after == null ? Integer.MIN_VALUE : (after == Integer.MAX_VALUE ? after : after + 1);
+            markCacheable(request, from, page.hasNext() ? page.getNextCursor() : Integer.MAX_VALUE);
+        }
+    }
+    
+    static int[] idRange(HttpServletRequest request) {
+        return (int[]) request.getAttribute(ID_RANGE_ATTRIBUTE);
+    }
+    
+    CachedPage get(String key) {
+        return pages.getIfPresent(key);
+    }
+    
+    long generation() {
+        return generation.get();
+    }
+    
+    /**
+     * Кладём страницу, только если с начала её отрисовки не было сбросов.
+     * Проверяем ещё раз после put: сброс мог пройти между проверкой и put
+     *
+     * @param generation значение generation() до начала обработки запроса
+     */
+    void put(String key, CachedPage page, long generation) {
+        if (this.generation.get() != generation) {
+            return;
+        }
+        pages.put(key, page);
+        if (this.generation.get() != generation) {
+            pages.asMap().remove(key, page);
+        }
+    }
+    
+    /**
+     * Сбросить страницы, на которых есть (или должен появиться) человек с этим id
+     */
+    public void evict(int id) {
+        afterCommit(() -> pages.asMap().values().removeIf(page -> page.contains(id)));
+    }
+    
+    /**
+     * Сбросить страницы, на которых есть хотя бы один из этих id (массовое удаление)
+     */
+    public void evict(Collection<Integer> ids) {
+        int[] sorted = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+        afterCommit(() -> pages.asMap().values().removeIf(page -> page.containsAny(sorted)));
+    }
+    
+    public void evictAll() {
+        afterCommit(pages::invalidateAll);
+    }
+    
+    private void afterCommit(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            generation.incrementAndGet();
+            eviction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                generation.incrementAndGet();
+                eviction.run();
+            }
+        });
+    }
+    
+    static class CachedPage {
+        
+        private final byte[] body;
+        private final String contentType;
+        private final String etag;
+        private final int fromId;
+        private final int toId;
+        
+        CachedPage(byte[] body, String contentType, String etag, int[] idRange) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.fromId = idRange[0];
+            this.toId = idRange[1];
+        }
+        
+        byte[] getBody() {
+            return body;
+        }
+        
+        String getContentType() {
+            return contentType;
+        }
+        
+        String getEtag() {
+            return etag;
+        }
+        
+        boolean contains(int id) {
+            return id >= fromId && id <= toId;
+        }
+        
+        //        Первый id >= fromId в отсортированном массиве - внутри диапазона?
+        boolean containsAny(int[] sortedIds) {
+            int i = Arrays.binarySearch(sortedIds, fromId);
+            int first = i >= 0 ? i : -i - 1;
+            return first < sortedIds.length && sortedIds[first] <= toId;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.alexsem.springcourse.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+import ru.alexsem.springcourse.cache.PeoplePageCache.CachedPage;
+import ru.alexsem.springcourse.config.ReadYourWrites;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Отдаёт /people и /people/{id} из PeoplePageCache: без запросов в БД и без Thymeleaf.
+ * Если у клиента уже есть эта версия страницы (If-None-Match совпал с ETag) - 304 без тела.
+ *
+ * Промах: запрос идёт в контроллер, ответ буферизуется. Если контроллер пометил страницу
+ * (PeoplePageCache.markCacheable) и ответ 200 - страница сохраняется вместе с ETag (MD5 тела).
+ * Большие страницы (?size= больше people.page_cache.max_page_size) фильтр пропускает как есть.
+ * Регистрируется в MySpringMvcDispatcherSerlvetIntitializer через DelegatingFilterProxy.
+ */
+@Component
+public class PeoplePageCacheFilter extends OncePerRequestFilter {
+    
+    private static final String GENERATION_ATTRIBUTE = PeoplePageCacheFilter.class.getName() + ".generation";
+    
+//    Только /people и /people/{id}: остальные страницы не кэшируются, а выгрузку
+//    (/people/export) нельзя буферизовать в памяти целиком
+    private static final Pattern CACHEABLE_PATH = Pattern.compile("/people(/\\d+)?");
+    
+    private final PeoplePageCache cache;
+//    Страницы списка больше people.page_cache.max_page_size строк не кэшируются и не буферизуются:
+//    они отдаются клиенту потоком по мере отрисовки шаблона
+    private final int maxCachedPageSize;
+    
+    @Autowired
+    public PeoplePageCacheFilter(PeoplePageCache cache,
+                                 @Value("${people.page_cache.max_page_size:100}") int maxCachedPageSize) {
+        this.cache = cache;
+        this.maxCachedPageSize = maxCachedPageSize;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !"GET".equals(request.getMethod()) || !CACHEABLE_PATH.matcher(path).matches()
+               || isLargePage(request.getParameter("size"));
+    }
+    
+    private boolean isLargePage(String size) {
+        try {
+            return size != null && Integer.parseInt(size) > maxCachedPageSize;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+//    Асинхронные обработчики (CompletableFuture) дописывают ответ во втором, ASYNC dispatch
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getQueryString() == null
+                ? request.getRequestURI()
+                : request.getRequestURI() + '?' + request.getQueryString();
+        
+        HttpServletResponse responseToUse = response;
+        if (!isAsyncDispatch(request)) {
+//            Браузер всё равно спрашивает сервер, но с If-None-Match - и получает 304
+            response.setHeader("Cache-Control", "no-cache");
+            
+            CachedPage cached = cache.get(key);
+            if (cached != null) {
+                if (new ServletWebRequest(request, response).checkNotModified(cached.getEtag())) {
+                    return;
+                }
+                response.setContentType(cached.getContentType());
+                response.setContentLength(cached.getBody().length);
+                response.getOutputStream().write(cached.getBody());
+                return;
+            }
+            request.setAttribute(GENERATION_ATTRIBUTE, cache.generation());
+            responseToUse = new ContentCachingResponseWrapper(response);
+        }
+        
+        chain.doFilter(request, responseToUse);
+    
+//        Ответ ещё не готов - допишем его после ASYNC dispatch
+        if (isAsyncStarted(request)) {
+            return;
+        }
+        ContentCachingResponseWrapper wrapper =
+                WebUtils.getNativeResponse(responseToUse, ContentCachingResponseWrapper.class);
+        if (wrapper == null) {
+            return;
+        }
+        Long generation = (Long) request.getAttribute(GENERATION_ATTRIBUTE);
+        int[] idRange = PeoplePageCache.idRange(request);
+        if (idRange == null || generation == null || wrapper.getStatus() != HttpServletResponse.SC_OK) {
+            wrapper.copyBodyToResponse();
+            return;
+        }
+        byte[] body = wrapper.getContentAsByteArray();
+        String etag = '"' + DigestUtils.md5DigestAsHex(body) + '"';
+//        Реплика могла ещё не получить изменения, после которых страницу сбросили:
+//        такую страницу отдаём, но в общий кэш не кладём
+        if (!ReadYourWrites.readFromReplica()) {
+            cache.put(key, new CachedPage(body, wrapper.getContentType(), etag, idRange), generation);
+        }
+        
+        if (!new ServletWebRequest(request, (HttpServletResponse) wrapper.getResponse()).checkNotModified(etag)) {
+            wrapper.copyBodyToResponse();
+        }
+    }
+}
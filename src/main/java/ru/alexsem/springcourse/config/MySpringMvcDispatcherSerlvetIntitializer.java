@@ -1,7 +1,9 @@
 package ru.alexsem.springcourse.config;
 
 import org.springframework.web.filter.CharacterEncodingFilter;
+import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.filter.HiddenHttpMethodFilter;
+import org.springframework.web.servlet.FrameworkServlet;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 import javax.servlet.DispatcherType;
@@ -32,11 +34,55 @@ public class MySpringMvcDispatcherSerlvetIntitializer extends AbstractAnnotation
         super.onStartup(aServletContext);
         registerCharacterEncodingFilter(aServletContext);
         registerHiddenFieldFilter(aServletContext);
+        registerReadYourWritesFilter(aServletContext);
+        registerPeoplePageCacheFilter(aServletContext);
+        registerGzipResponseFilter(aServletContext);
+    }
+    
+    /**
+     * Сжатие ответов JSON API (см. GzipResponseFilter). Bean из контекста DispatcherServlet,
+     * как и peoplePageCacheFilter (порог сжатия - compression.min_size)
+     */
+    private void registerGzipResponseFilter(ServletContext aContext) {
+        DelegatingFilterProxy proxy = new DelegatingFilterProxy("gzipResponseFilter");
+        proxy.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+        FilterRegistration.Dynamic gzip = aContext.addFilter("gzipResponseFilter", proxy);
+        gzip.setAsyncSupported(true);
+        gzip.addMappingForUrlPatterns(null, true, "/api/*");
+    }
+    
+    /**
+     * Раньше peoplePageCacheFilter: тот смотрит, читал ли запрос с реплики (см. ReadYourWritesFilter).
+     * Bean из контекста DispatcherServlet - окно чтения из primary берётся из настроек
+     */
+    private void registerReadYourWritesFilter(ServletContext aContext) {
+        DelegatingFilterProxy proxy = new DelegatingFilterProxy("readYourWritesFilter");
+        proxy.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+        FilterRegistration.Dynamic readYourWrites = aContext.addFilter("readYourWritesFilter", proxy);
+        readYourWrites.setAsyncSupported(true);
+        readYourWrites.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC),
+                true, "/*");
+    }
+    
+    /**
+     * Фильтр - bean из контекста DispatcherServlet (ему нужен PeoplePageCache),
+     * DelegatingFilterProxy находит его при первом запросе.
+     * ASYNC - чтобы закэшировать ответ асинхронного обработчика
+     */
+    private void registerPeoplePageCacheFilter(ServletContext aContext) {
+        DelegatingFilterProxy proxy = new DelegatingFilterProxy("peoplePageCacheFilter");
+        proxy.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+        FilterRegistration.Dynamic pageCache = aContext.addFilter("peoplePageCacheFilter", proxy);
+        pageCache.setAsyncSupported(true);
+        pageCache.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC),
+                true, "/people", "/people/*");
     }
     
     private void registerHiddenFieldFilter(ServletContext aContext) {
-        aContext.addFilter("hiddenHttpMethodFilter",
-                new HiddenHttpMethodFilter()).addMappingForUrlPatterns(null, true, "/*");
+        FilterRegistration.Dynamic hiddenHttpMethod = aContext.addFilter("hiddenHttpMethodFilter",
+                new HiddenHttpMethodFilter());
+        hiddenHttpMethod.setAsyncSupported(true);
+        hiddenHttpMethod.addMappingForUrlPatterns(null, true, "/*");
     }
     
     private void registerCharacterEncodingFilter(ServletContext aContext) {
@@ -47,6 +93,8 @@ public class MySpringMvcDispatcherSerlvetIntitializer extends AbstractAnnotation
         characterEncodingFilter.setForceEncoding(true);
         
         FilterRegistration.Dynamic characterEncoding = aContext.addFilter("characterEncoding", characterEncodingFilter);
+//        Без этого контейнер не даст начать асинхронную обработку (все фильтры цепочки должны её поддерживать)
+        characterEncoding.setAsyncSupported(true);
         characterEncoding.addMappingForUrlPatterns(dispatcherTypes, true, "/*");
     }
 }
@@ -0,0 +1,189 @@
+package ru.alexsem.springcourse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Пул основной БД (primary) + пулы реплик.
+ * Транзакции @Transactional(readOnly = true) идут на реплики по кругу (round-robin),
+ * всё остальное (запись, работа без транзакции, Flyway) - на primary.
+ * Раз в checkIntervalSeconds на каждой реплике выполняется lagQuery (отставание в секундах):
+ * реплика, которая отстала больше чем на maxLagSeconds или не отвечает, временно не используется.
+ * Если подходящих реплик нет - чтение тоже идёт на primary.
+ *
+ * Клиент, который только что записал, читает из primary (ReadYourWrites): реплика может ещё
+ * не получить его изменения. Остальные клиенты в это время читают с реплик.
+ * Прочитанное с реплики может быть старым, поэтому транзакция на реплике не кладёт сущности
+ * в кэш второго уровня (CacheMode.GET, RoutingJpaTransactionManager), а PeoplePageCacheFilter
+ * не кэширует такие страницы.
+ *
+ * Работает только за LazyConnectionDataSourceProxy: JpaTransactionManager берёт соединение
+ * в начале транзакции, ещё до того, как признак readOnly попадёт в TransactionSynchronizationManager.
+ * Прокси откладывает получение настоящего соединения до первого SQL.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(ReadWriteRoutingDataSource.class);
+    
+    private static final String PRIMARY = "primary";
+    
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService lagChecker;
+    
+    /**
+     * @param primary          пул основной БД
+     * @param replicas         пулы реплик (может быть пустым - тогда всё идёт на primary)
+     * @param lagQuery         SQL, который возвращает отставание реплики в секундах
+     * @param maxLagSeconds    при большем отставании реплика не используется
+     * @param checkIntervalSeconds как часто проверять отставание
+     * @param registry         метрика datasource.replica.lag (секунды, -1 - реплика недоступна)
+     */
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                      String lagQuery, double maxLagSeconds, long checkIntervalSeconds,
+                                      MeterRegistry registry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+        
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Replica replica : this.replicas) {
+            targets.put(replica.name(), replica.pool);
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagSeconds)
+                    .tag("pool", replica.name())
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        
+        if (this.replicas.isEmpty()) {
+            lagChecker = null;
+        } else {
+            lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-lag-checker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagChecker.scheduleWithFixedDelay(() -> checkLag(lagQuery, maxLagSeconds),
+                    0, checkIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+    
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        Object bound = TransactionSynchronizationManager.getResource(this);
+        return bound != null ? bound : chooseForRead();
+    }
+    
+    /**
+     * Выбирает источник для читающей транзакции в начале и закрепляет его до её конца.
+     * Вызывается из RoutingJpaTransactionManager
+     *
+     * @return true, если транзакция будет читать с реплики
+     */
+    public boolean bindReadRoute() {
+        Object bound = TransactionSynchronizationManager.getResource(this);
+        if (bound == null) {
+            bound = chooseForRead();
+            TransactionSynchronizationManager.bindResource(this, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ReadWriteRoutingDataSource.this);
+                }
+            });
+        }
+        return !PRIMARY.equals(bound);
+    }
+    
+    private Object chooseForRead() {
+        if (replicas.isEmpty() || ReadYourWrites.pinnedToPrimary()) {
+            return PRIMARY;
+        }
+//        Начинаем со следующей по кругу реплики и пропускаем недоступные
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.available) {
+                ReadYourWrites.replicaRead();
+                return replica.name();
+            }
+        }
+        return PRIMARY;
+    }
+    
+    private void checkLag(String lagQuery, double maxLagSeconds) {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(lagQuery)) {
+                rs.next();
+                replica.lagSeconds = rs.getDouble(1);
+            } catch (Exception e) {
+                if (replica.lagSeconds >= 0) {
+                    log.warn("Replica " + replica.name() + " is unavailable: " + e.getMessage());
+                }
+                replica.lagSeconds = -1;
+            }
+            boolean available = replica.lagSeconds >= 0 && replica.lagSeconds <= maxLagSeconds;
+            if (available != replica.available) {
+                log.info("Replica " + replica.name() + (available ? " is back in rotation" : " is out of rotation")
+                        + ", lag=" + replica.lagSeconds + "s");
+            }
+            replica.available = available;
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        replicas.forEach(replica -> replica.pool.close());
+        primary.close();
+    }
+    
+    private static class Replica {
+        
+        private final HikariDataSource pool;
+//        Пока отставание не проверено, реплику не используем
+        private volatile boolean available;
+        private volatile double lagSeconds;
+        
+        private Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+        
+        private String name() {
+            return pool.getPoolName();
+        }
+    }
+}
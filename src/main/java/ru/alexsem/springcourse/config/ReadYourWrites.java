@@ -0,0 +1,150 @@
+package ru.alexsem.springcourse.config;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Чтение своих записей при чтении с реплик - для одного клиента, а не для всего приложения.
+ * Клиент, который только что записал, какое-то время читает из primary (ReadWriteRoutingDataSource),
+ * остальные клиенты читают с реплик как обычно.
+ *
+ * Клиент - HTTP-запрос, привязанный к потоку (ReadYourWritesFilter, момент окончания окна
+ * хранится в cookie). Запись - транзакция, в которой Hibernate выполнил INSERT, UPDATE или DELETE
+ * (statementPrepared); окно отсчитывается от её коммита. Транзакции, которые только читали,
+ * окно не открывают. Запись без клиента (фоновые задачи, например MoodUpdateBuffer) никого
+ * к primary не привязывает.
+ *
+ * Заодно отмечается, читал ли запрос с реплики: такой ответ может быть старым,
+ * и PeoplePageCacheFilter не кладёт его в общий кэш страниц.
+ */
+public final class ReadYourWrites {
+    
+    private static final ThreadLocal<Client> CURRENT = new ThreadLocal<>();
+    
+    private ReadYourWrites() {
+    }
+    
+    public static Client current() {
+        return CURRENT.get();
+    }
+    
+    public static void attach(Client client) {
+        if (client == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(client);
+        }
+    }
+    
+    /**
+     * Переносит клиента из потока HTTP-запроса в поток пула (асинхронные обработчики),
+     * как QueryStatsTaskDecorator переносит счётчики SQL
+     */
+    public static Runnable decorate(Runnable runnable) {
+        Client client = CURRENT.get();
+        return () -> {
+            attach(client);
+            try {
+                runnable.run();
+            } finally {
+                attach(null);
+            }
+        };
+    }
+    
+    /**
+     * @return true, если текущий клиент недавно записал и должен читать из primary
+     */
+    public static boolean pinnedToPrimary() {
+        Client client = CURRENT.get();
+        return client != null && System.currentTimeMillis() < client.primaryUntil;
+    }
+    
+    public static void replicaRead() {
+        Client client = CURRENT.get();
+        if (client != null) {
+            client.readFromReplica = true;
+        }
+    }
+    
+    /**
+     * @return true, если текущий запрос что-то читал с реплики
+     */
+    public static boolean readFromReplica() {
+        Client client = CURRENT.get();
+        return client != null && client.readFromReplica;
+    }
+    
+    /**
+     * Hibernate готовит SQL (StatementInspector в SpringConfig). Первый INSERT/UPDATE/DELETE
+     * в транзакции откроет окно чтения из primary после её коммита; без транзакции - сразу
+     */
+    public static void statementPrepared(String sql) {
+        Client client = CURRENT.get();
+        if (client == null || !isWrite(sql)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            client.written();
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PinAfterCommit) {
+                return;
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new PinAfterCommit(client));
+    }
+    
+    private static boolean isWrite(String sql) {
+        String statement = sql.stripLeading();
+        return statement.regionMatches(true, 0, "insert", 0, 6)
+               || statement.regionMatches(true, 0, "update", 0, 6)
+               || statement.regionMatches(true, 0, "delete", 0, 6)
+               || statement.regionMatches(true, 0, "merge", 0, 5);
+    }
+    
+    /**
+     * Один клиент (HTTP-запрос). Объект общий для потока запроса и потоков пула, поэтому поля volatile
+     */
+    public static final class Client {
+        
+        private final long pinMillis;
+        private final LongConsumer onWrite;
+//        System.currentTimeMillis(), до которого читать из primary
+        private volatile long primaryUntil;
+        private volatile boolean readFromReplica;
+        
+        /**
+         * @param primaryUntil до какого момента клиент читает из primary (из cookie прошлых запросов)
+         * @param pinMillis    сколько читать из primary после записи
+         * @param onWrite      вызывается после записи с новым primaryUntil (ReadYourWritesFilter ставит cookie)
+         */
+        public Client(long primaryUntil, long pinMillis, LongConsumer onWrite) {
+            this.primaryUntil = primaryUntil;
+            this.pinMillis = pinMillis;
+            this.onWrite = onWrite;
+        }
+        
+        private void written() {
+            primaryUntil = System.currentTimeMillis() + pinMillis;
+            onWrite.accept(primaryUntil);
+        }
+    }
+    
+    private static class PinAfterCommit implements TransactionSynchronization {
+        
+        private final Client client;
+        
+        private PinAfterCommit(Client client) {
+            this.client = client;
+        }
+        
+        @Override
+        public void afterCommit() {
+            client.written();
+        }
+    }
+}
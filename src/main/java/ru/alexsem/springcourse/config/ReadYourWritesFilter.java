@@ -0,0 +1,82 @@
+package ru.alexsem.springcourse.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+import ru.alexsem.springcourse.config.ReadYourWrites.Client;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Привязывает HTTP-запрос к потоку как клиента ReadYourWrites.
+ * После записи клиент получает cookie primary_until (момент, до которого его чтение идёт на primary),
+ * и следующие его запросы - например, GET после redirect из формы - видят только что записанное,
+ * даже если реплика ещё отстаёт. Остальные клиенты по-прежнему читают с реплик.
+ * Регистрируется в MySpringMvcDispatcherSerlvetIntitializer раньше peoplePageCacheFilter.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    
+    public static final String COOKIE = "primary_until";
+    
+    private static final String CLIENT_ATTRIBUTE = ReadYourWritesFilter.class.getName() + ".client";
+    
+    private final long pinMillis;
+    
+    /**
+     * @param pinAfterWriteSeconds сколько после записи клиент читает из primary
+     */
+    public ReadYourWritesFilter(double pinAfterWriteSeconds) {
+        this.pinMillis = (long) (pinAfterWriteSeconds * 1000);
+    }
+    
+//    Асинхронный обработчик дописывает ответ во втором dispatch - клиент тот же
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Client client = (Client) request.getAttribute(CLIENT_ATTRIBUTE);
+        if (client == null) {
+            client = new Client(primaryUntil(request), pinMillis, until -> pin(request, response, until));
+            request.setAttribute(CLIENT_ATTRIBUTE, client);
+        }
+        Client previous = ReadYourWrites.current();
+        ReadYourWrites.attach(client);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadYourWrites.attach(previous);
+        }
+    }
+    
+//    Значение из cookie не дальше окна от текущего момента: клиент не может закрепиться за primary надолго
+    private long primaryUntil(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return 0;
+        }
+        try {
+            return Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis() + pinMillis);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    private void pin(HttpServletRequest request, HttpServletResponse response, long until) {
+        if (response.isCommitted()) {
+            return;
+        }
+        Cookie cookie = new Cookie(COOKIE, String.valueOf(until));
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (pinMillis + 999) / 1000));
+        response.addCookie(cookie);
+    }
+}
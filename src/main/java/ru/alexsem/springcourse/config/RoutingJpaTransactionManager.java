@@ -0,0 +1,38 @@
+package ru.alexsem.springcourse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.alexsem.springcourse.monitoring.MeteredJpaTransactionManager;
+
+/**
+ * MeteredJpaTransactionManager, который в начале читающей транзакции выбирает для неё
+ * primary или реплику (ReadWriteRoutingDataSource.bindReadRoute).
+ * Если транзакция читает с реплики, сессия только берёт данные из кэша второго уровня
+ * и кэша запросов, но не кладёт туда (CacheMode.GET): реплика может отставать,
+ * а кэши общие для всех клиентов, в том числе для тех, кто только что записал.
+ */
+public class RoutingJpaTransactionManager extends MeteredJpaTransactionManager {
+    
+    private final ReadWriteRoutingDataSource routingDataSource;
+    
+    public RoutingJpaTransactionManager(MeterRegistry registry, ReadWriteRoutingDataSource routingDataSource) {
+        super(registry);
+        this.routingDataSource = routingDataSource;
+    }
+    
+    @Override
+    protected void prepareSynchronization(DefaultTransactionStatus status, TransactionDefinition definition) {
+        super.prepareSynchronization(status, definition);
+        if (status.isNewTransaction() && status.isNewSynchronization() && definition.isReadOnly()
+            && routingDataSource.bindReadRoute()) {
+            EntityManagerHolder holder = (EntityManagerHolder)
+                    TransactionSynchronizationManager.getResource(obtainEntityManagerFactory());
+            holder.getEntityManager().unwrap(Session.class).setCacheMode(CacheMode.GET);
+        }
+    }
+}
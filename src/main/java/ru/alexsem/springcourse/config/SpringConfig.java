@@ -1,30 +1,71 @@
 package ru.alexsem.springcourse.config;
 
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
+import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.hibernate5.HibernateTransactionManager;
 import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewResolverRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.thymeleaf.spring5.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+import ru.alexsem.springcourse.monitoring.CountingStatementInspector;
+import ru.alexsem.springcourse.monitoring.HandlerMetricsInterceptor;
+import ru.alexsem.springcourse.monitoring.QueryBudgetInterceptor;
+import ru.alexsem.springcourse.monitoring.QueryStatsIntegrator;
+import ru.alexsem.springcourse.monitoring.QueryStatsSessionListener;
+import ru.alexsem.springcourse.monitoring.QueryStatsTaskDecorator;
+import ru.alexsem.springcourse.monitoring.RepositoryMetricsPostProcessor;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 
 @Configuration
@@ -35,6 +76,12 @@ import java.util.Properties;
 @EnableWebMvc
 public class SpringConfig implements WebMvcConfigurer {
     
+//    Отставание реплики PostgreSQL в секундах. Если всё полученное уже применено - 0
+//    (иначе при отсутствии записей в основную БД "отставание" росло бы само по себе)
+    private static final String REPLICA_LAG_QUERY =
+            "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+    
     private final ApplicationContext applicationContext;
     
 //    С помощью данного объекта получим данные из hibernate.properties
@@ -53,6 +100,11 @@ public class SpringConfig implements WebMvcConfigurer {
         templateResolver.setPrefix("/WEB-INF/views/");
         templateResolver.setSuffix(".html");
         templateResolver.setCharacterEncoding("UTF-8");
+//        Разобранный шаблон кэшируется и не читается с диска на каждый запрос.
+//        thymeleaf.cache=false - для разработки (правки шаблонов видны сразу),
+//        thymeleaf.cache.ttl_ms - через сколько шаблон всё же перечитать
+        templateResolver.setCacheable(env.getProperty("thymeleaf.cache", Boolean.class, true));
+        templateResolver.setCacheTTLMs(env.getProperty("thymeleaf.cache.ttl_ms", Long.class, 3_600_000L));
         return templateResolver;
     }
     
@@ -61,9 +113,74 @@ public class SpringConfig implements WebMvcConfigurer {
         SpringTemplateEngine templateEngine = new SpringTemplateEngine();
         templateEngine.setTemplateResolver(templateResolver());
         templateEngine.setEnableSpringELCompiler(true);
+//        Ограничиваем кэши: разобранные шаблоны и разобранные выражения (${...}, @{...})
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(env.getProperty("thymeleaf.cache.max_templates", Integer.class, 200));
+        cacheManager.setExpressionCacheMaxSize(env.getProperty("thymeleaf.cache.max_expressions", Integer.class, 500));
+        templateEngine.setCacheManager(cacheManager);
         return templateEngine;
     }
     
+    /**
+     * Время обработки каждого метода контроллера (см. /metrics) и
+     * подсчёт SQL на каждый HTTP-запрос. Бюджет - diagnostics.query_budget,
+     * diagnostics.query_budget.fail=true - падать вместо предупреждения в логе (для тестов)
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerMetricsInterceptor(meterRegistry()));
+        registry.addInterceptor(new QueryBudgetInterceptor(
+                env.getProperty("diagnostics.query_budget", Integer.class, 20),
+                env.getProperty("diagnostics.query_budget.fail", Boolean.class, false)));
+    }
+    
+    /**
+     * Bean Validation (@Valid, mvcValidator) без Expression Language: сообщения в аннотациях Person -
+     * готовый текст. Иначе Hibernate Validator без реализации javax.el (её даёт контейнер сервлетов,
+     * но не тесты) не создаётся, и Spring молча работает вовсе без проверок
+     */
+    @Override
+    public Validator getValidator() {
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.setMessageInterpolator(new ParameterMessageInterpolator());
+        return validator;
+    }
+    
+    /**
+     * Асинхронные обработчики (CompletableFuture) не держат поток контейнера,
+     * пока идёт запрос к БД. Если ответ не готов за async.timeout_ms - 503
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(requestExecutor());
+        configurer.setDefaultTimeout(env.getProperty("async.timeout_ms", Long.class, 10_000L));
+    }
+    
+    /**
+     * Пул для асинхронных обработчиков контроллеров.
+     * Потоков - столько же, сколько соединений в пуле БД (больше всё равно ждали бы соединения).
+     * Очередь ограничена (async.queue_capacity): когда она заполнена, новая задача отклоняется
+     * (TaskRejectedException) и клиент сразу получает 503, а не висит в очереди.
+     * Метрики пула - executor_* с тегом name=people.requests в /metrics
+     */
+    @Bean
+    public ThreadPoolTaskExecutor requestExecutor() {
+        int poolSize = env.getProperty("async.pool_size", Integer.class,
+                env.getProperty("hibernate.hikari.maximumPoolSize", Integer.class, 10));
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("people-request-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(env.getProperty("async.queue_capacity", Integer.class, 100));
+        QueryStatsTaskDecorator queryStatsDecorator = new QueryStatsTaskDecorator();
+        executor.setTaskDecorator(runnable -> queryStatsDecorator.decorate(ReadYourWrites.decorate(runnable)));
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        ExecutorServiceMetrics.monitor(meterRegistry(), executor.getThreadPoolExecutor(), "people.requests");
+        return executor;
+    }
+    
     @Override
     public void configureViewResolvers(ViewResolverRegistry registry) {
         ThymeleafViewResolver resolver = new ThymeleafViewResolver();
@@ -73,16 +190,140 @@ public class SpringConfig implements WebMvcConfigurer {
         registry.viewResolver(resolver);
     }
     
+    /**
+     * DataSource для Hibernate и Spring Data JPA: запись - в основную БД,
+     * @Transactional(readOnly = true) - на реплики (см. ReadWriteRoutingDataSource).
+     * LazyConnectionDataSourceProxy берёт настоящее соединение только перед первым SQL,
+     * когда уже известно, читающая ли это транзакция.
+     */
     @Bean
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource());
+//        Иначе прокси при первом обращении сам спросит эти значения у соединения
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return dataSource;
+    }
+    
+    /**
+     * Пул основной БД и пулы реплик.
+     * Реплики задаются в hibernate.properties через запятую: hibernate.replica.urls
+     * (логин и пароль - hibernate.replica.username/password, по умолчанию как у основной БД).
+     * Без hibernate.replica.urls всё идёт в основную БД, как раньше.
+     * hibernate.replica.max_lag_seconds - при большем отставании реплика не используется,
+     * hibernate.replica.lag_query - запрос, возвращающий отставание в секундах (по умолчанию для PostgreSQL),
+     * Сколько после записи клиент читает из основной БД - см. readYourWritesFilter()
+     */
+    @Bean(destroyMethod = "close")
+    public ReadWriteRoutingDataSource routingDataSource() {
+        String username = env.getRequiredProperty("hibernate.connection.username");
+        String password = env.getRequiredProperty("hibernate.connection.password");
+        HikariDataSource primary = newPool("people-pool",
+                env.getRequiredProperty("hibernate.connection.url"), username, password);
         
-        dataSource.setDriverClassName(env.getRequiredProperty("hibernate.driver_class"));
-        dataSource.setUrl(env.getRequiredProperty("hibernate.connection.url"));
-        dataSource.setUsername(env.getRequiredProperty("hibernate.connection.username"));
-        dataSource.setPassword(env.getRequiredProperty("hibernate.connection.password"));
+        List<HikariDataSource> replicas = new ArrayList<>();
+        String[] replicaUrls = env.getProperty("hibernate.replica.urls", String[].class, new String[0]);
+        for (int i = 0; i < replicaUrls.length; i++) {
+            replicas.add(newPool("people-replica-" + (i + 1), replicaUrls[i].trim(),
+                    env.getProperty("hibernate.replica.username", username),
+                    env.getProperty("hibernate.replica.password", password)));
+        }
         
-        return dataSource;
+        double maxLagSeconds = env.getProperty("hibernate.replica.max_lag_seconds", Double.class, 5.0);
+        long checkIntervalSeconds = env.getProperty("hibernate.replica.check_interval_seconds", Long.class, 5L);
+        return new ReadWriteRoutingDataSource(primary, replicas,
+                env.getProperty("hibernate.replica.lag_query", REPLICA_LAG_QUERY),
+                maxLagSeconds, checkIntervalSeconds, meterRegistry());
+    }
+    
+    /**
+     * Клиент, который записал, читает из основной БД hibernate.replica.pin_after_write_seconds
+     * (по умолчанию max_lag_seconds + check_interval_seconds: дольше принятая реплика отставать не должна).
+     * Регистрируется в MySpringMvcDispatcherSerlvetIntitializer через DelegatingFilterProxy
+     */
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter() {
+        double maxLagSeconds = env.getProperty("hibernate.replica.max_lag_seconds", Double.class, 5.0);
+        long checkIntervalSeconds = env.getProperty("hibernate.replica.check_interval_seconds", Long.class, 5L);
+        return new ReadYourWritesFilter(env.getProperty("hibernate.replica.pin_after_write_seconds", Double.class,
+                maxLagSeconds + checkIntervalSeconds));
+    }
+    
+    /**
+     * Пул соединений вместо DriverManagerDataSource (тот открывает новое
+     * соединение с PostgreSQL на каждую транзакцию).
+     * Размеры и таймауты пула берутся из hibernate.properties (hibernate.hikari.*),
+     * если их там нет - используются значения по умолчанию. Для реплик - те же настройки.
+     */
+    private HikariDataSource newPool(String poolName, String url, String username, String password) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        
+        config.setDriverClassName(env.getRequiredProperty("hibernate.driver_class"));
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        
+        config.setMaximumPoolSize(env.getProperty("hibernate.hikari.maximumPoolSize", Integer.class, 10));
+        config.setMinimumIdle(env.getProperty("hibernate.hikari.minimumIdle", Integer.class, 2));
+        config.setConnectionTimeout(env.getProperty("hibernate.hikari.connectionTimeout", Long.class, 5_000L));
+        config.setIdleTimeout(env.getProperty("hibernate.hikari.idleTimeout", Long.class, 300_000L));
+        config.setMaxLifetime(env.getProperty("hibernate.hikari.maxLifetime", Long.class, 1_800_000L));
+//        Соединение, которое не вернули в пул дольше этого времени, попадёт в лог со stack trace
+        config.setLeakDetectionThreshold(env.getProperty("hibernate.hikari.leakDetectionThreshold", Long.class, 20_000L));
+//        Драйвер PostgreSQL склеивает batch из INSERT-ов в один multi-values INSERT
+        if (config.getJdbcUrl().startsWith("jdbc:postgresql:")) {
+            config.addDataSourceProperty("reWriteBatchedInserts", "true");
+        }
+        
+//        Метрики пула в /metrics (hikaricp_*, в т.ч. время ожидания соединения) + MBean-ы пула в JMX
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry()));
+        config.setRegisterMbeans(true);
+        
+        return new HikariDataSource(config) {
+//            Hibernate сам читает hibernate.properties с classpath и, раз там есть
+//            hibernate.connection.username, просит соединение через getConnection(user, password).
+//            Hikari этот метод не поддерживает, а логин и пароль уже заданы в пуле
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return getConnection();
+            }
+        };
+    }
+    
+    /**
+     * Реестр метрик (Micrometer), отдаётся в формате Prometheus на /metrics.
+     * Для всех таймеров считаются перцентили p50/p99/p999 (на стороне приложения,
+     * по скользящему окну - без хранения всех замеров)
+     */
+    @Bean
+    public PrometheusMeterRegistry meterRegistry() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99, 0.999)
+                        .build()
+                        .merge(config);
+            }
+        });
+        return registry;
+    }
+    
+//    static - BeanPostProcessor создаётся раньше остальных бинов этой конфигурации
+    @Bean
+    public static RepositoryMetricsPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new RepositoryMetricsPostProcessor(registry);
+    }
+    
+//    Исключения Hibernate в DAO с @Repository - в DataAccessException (как у репозиториев Spring Data)
+    @Bean
+    public static PersistenceExceptionTranslationPostProcessor persistenceExceptionTranslationPostProcessor() {
+        return new PersistenceExceptionTranslationPostProcessor();
     }
     
     // Используем Hibernate вместо JdbcTemplate
@@ -97,9 +338,84 @@ public class SpringConfig implements WebMvcConfigurer {
         Properties properties = new Properties();
         properties.put("hibernate.dialect", env.getRequiredProperty("hibernate.dialect"));
         properties.put("hibernate.show_sql", env.getRequiredProperty("hibernate.show_sql"));
+//        Схему создают миграции Flyway (см. flyway()), Hibernate при старте только проверяет,
+//        что таблицы, колонки и последовательности соответствуют сущностям.
+//        Проверку можно отключить: hibernate.hbm2ddl.auto=none
+        properties.put("hibernate.hbm2ddl.auto", env.getProperty("hibernate.hbm2ddl.auto", "validate"));
+        
+//        JDBC batching: INSERT/UPDATE отправляются пачками, отсортированными по таблицам
+        properties.put("hibernate.jdbc.batch_size", env.getProperty("hibernate.jdbc.batch_size", "50"));
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+        properties.put("hibernate.jdbc.batch_versioned_data", "true");
+        
+//        Кэш второго уровня (Person, Item, Person.items) и кэш запросов.
+//        Регионы создаются заранее в secondLevelCacheManager(), поэтому missing_cache_strategy=fail
+        properties.put("hibernate.cache.use_second_level_cache", "true");
+        properties.put("hibernate.cache.use_query_cache", "true");
+        properties.put("hibernate.cache.region.factory_class", "jcache");
+        properties.put("hibernate.javax.cache.cache_manager", secondLevelCacheManager());
+        properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+//        При смене Item.owner инвалидировать и коллекцию Person.items (обратная сторона связи)
+        properties.put("hibernate.cache.auto_evict_collection_cache", "true");
+//        Попадания/промахи кэша (см. /stats/cache)
+        properties.put("hibernate.generate_statistics", "true");
+        
+//        Иначе вместе со статистикой включается INFO-лог "Session Metrics" в конце каждой сессии
+        properties.put("hibernate.session.events.log", "false");
+        
+//        Подсчёт SQL, загрузок сущностей/коллекций и времени JDBC на каждый HTTP-запрос (см. QueryCounter);
+//        INSERT/UPDATE/DELETE закрепляют чтение клиента за основной БД (см. ReadYourWrites)
+        CountingStatementInspector countingInspector = new CountingStatementInspector();
+        properties.put("hibernate.session_factory.statement_inspector", (StatementInspector) sql -> {
+            String inspected = countingInspector.inspect(sql);
+            ReadYourWrites.statementPrepared(inspected);
+            return inspected;
+        });
+        properties.put("hibernate.session.events.auto", QueryStatsSessionListener.class.getName());
+        properties.put("hibernate.integrator_provider",
+                (IntegratorProvider) () -> List.of(new QueryStatsIntegrator()));
         
         return properties;
     }
+    
+    /**
+     * Регионы кэша второго уровня с ограничением по размеру и времени жизни (TTL).
+     * Значения можно переопределить в hibernate.properties: cache.<регион>.max_size, cache.<регион>.ttl_seconds
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+        
+        createCacheRegion(cacheManager, "person", 10_000, 600);
+        createCacheRegion(cacheManager, "item", 50_000, 600);
+        createCacheRegion(cacheManager, "person.items", 10_000, 600);
+        createCacheRegion(cacheManager, "default-query-results-region", 5_000, 300);
+//        Метки времени изменения таблиц - по ним Hibernate понимает, что результат запроса устарел.
+//        Этот регион нельзя вытеснять по TTL
+        createCacheRegion(cacheManager, "default-update-timestamps-region", 0, 0);
+        
+        return cacheManager;
+    }
+    
+    private void createCacheRegion(CacheManager cacheManager, String region, long defaultMaxSize, long defaultTtlSeconds) {
+        if (cacheManager.getCache(region) != null) {
+            return;
+        }
+        long maxSize = env.getProperty("cache." + region + ".max_size", Long.class, defaultMaxSize);
+        long ttlSeconds = env.getProperty("cache." + region + ".ttl_seconds", Long.class, defaultTtlSeconds);
+        
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (maxSize > 0) {
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+        }
+        if (ttlSeconds > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        }
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(region, configuration);
+    }
 
 //    Соответствует Hibernate:
 
@@ -115,8 +431,34 @@ public class SpringConfig implements WebMvcConfigurer {
 //    }
 
 
+    /**
+     * Миграции схемы при старте приложения (до создания EntityManagerFactory).
+     * db/migration/common - для всех БД, db/migration/postgresql или /h2 - только для своей БД
+     * (например, индексы с text_pattern_ops и pg_trgm есть только в PostgreSQL).
+     * Существующая БД, созданная вручную по SQL/Scripts.sql, помечается как версия 1 (baseline),
+     * отличия её схемы от V1 исправляют V7 и postgresql/V7_1.
+     * Новые изменения схемы - только новыми файлами V<N>__*.sql, применённые миграции не редактируются
+     * (Flyway сверяет их контрольные суммы при старте).
+     * Отключить можно через flyway.enabled=false
+     */
+    @Bean
+    public Flyway flyway() {
+        String vendor = env.getRequiredProperty("hibernate.connection.url").split(":")[1];
+        Flyway flyway = Flyway.configure()
+                .dataSource(routingDataSource().getPrimary())
+                .locations("classpath:db/migration/common", "classpath:db/migration/" + vendor)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+        if (env.getProperty("flyway.enabled", Boolean.class, true)) {
+            flyway.migrate();
+        }
+        return flyway;
+    }
+    
 //    Соответствует спецификации JPA (работает как sessionFactory):
     @Bean
+    @DependsOn("flyway")
     public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
         final LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(dataSource());
@@ -144,7 +486,10 @@ public class SpringConfig implements WebMvcConfigurer {
     
     @Bean
     public PlatformTransactionManager transactionManager() {
-        JpaTransactionManager transactionManager = new JpaTransactionManager();
+//        Обычный JpaTransactionManager + замер длительности транзакций (см. /metrics)
+//        + выбор реплики для читающей транзакции (см. RoutingJpaTransactionManager)
+        JpaTransactionManager transactionManager = new RoutingJpaTransactionManager(meterRegistry(),
+                routingDataSource());
         transactionManager.setEntityManagerFactory(entityManagerFactory().getObject());
         
         return transactionManager;
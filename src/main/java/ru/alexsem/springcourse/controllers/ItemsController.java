@@ -0,0 +1,152 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Вещи: сводка (количество по названиям и владельцам) и вещи одного владельца.
+ * Все количества считаются в БД (group by), вещи в память не загружаются.
+ * Запись - только через ItemsService: так сбрасываются кэши с количествами и Person.items.
+ * Обработчики асинхронные, как в PeopleController
+ */
+@Controller
+@RequestMapping("/items")
+public class ItemsController {
+    
+    private final ItemsService itemsService;
+    private final PeopleService peopleService;
+//    Пул для асинхронных обработчиков (см. SpringConfig.requestExecutor)
+    private final Executor requestExecutor;
+    
+    @Autowired
+    public ItemsController(ItemsService itemsService, PeopleService peopleService,
+                           @Qualifier("requestExecutor") Executor requestExecutor) {
+        this.itemsService = itemsService;
+        this.peopleService = peopleService;
+        this.requestExecutor = requestExecutor;
+    }
+    
+    /**
+     * Самые частые названия вещей и владельцы с наибольшим количеством вещей
+     *
+     * @param top сколько строк показать в каждой таблице
+     * @param model
+     * @return
+     */
+    @GetMapping()
+    public CompletableFuture<String> index(@RequestParam(value = "top", required = false) Integer top,
+                                           Model model) {
+        return CompletableFuture.supplyAsync(() -> {
+            model.addAttribute("names", itemsService.countByItemName(top));
+            model.addAttribute("topOwners", itemsService.findTopOwners(top));
+            return "items/index";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Количество вещей у каждого владельца (/items/owners?after=id), keyset пагинация
+     *
+     * @param after
+     * @param size
+     * @param model
+     * @return
+     */
+    @GetMapping("/owners")
+    public CompletableFuture<String> owners(@RequestParam(value = "after", required = false) Integer after,
+                                            @RequestParam(value = "size", required = false) Integer size,
+                                            Model model) {
+        return CompletableFuture.supplyAsync(() -> {
+            model.addAttribute("page", itemsService.countItemsByOwner(after, size));
+            return "items/owners";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Вещи одного владельца (/items/owner/{id}?after=id), keyset пагинация.
+     * Нет такого человека - 404
+     *
+     * @param ownerId
+     * @param after
+     * @param size
+     * @param model
+     * @return
+     */
+    @GetMapping("/owner/{id}")
+    public CompletableFuture<String> ownerItems(@PathVariable("id") int ownerId,
+                                                @RequestParam(value = "after", required = false) Integer after,
+                                                @RequestParam(value = "size", required = false) Integer size,
+                                                Model model) {
+        return CompletableFuture.supplyAsync(() -> {
+            PersonDetails owner = peopleService.findDetails(ownerId);
+            if (owner == null) {
+                throw new EntityNotFoundException("Person " + ownerId + " not found");
+            }
+            model.addAttribute("owner", owner);
+            model.addAttribute("page", itemsService.findOwnerItems(ownerId, after, size));
+            model.addAttribute("after", after);
+            return "items/owner";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Добавляем вещь владельцу (форма на странице /items/owner/{id})
+     *
+     * @param ownerId
+     * @param itemName
+     * @return
+     */
+    @PostMapping("/owner/{id}")
+    public String add(@PathVariable("id") int ownerId, @RequestParam("itemName") String itemName) {
+        if (!itemName.isBlank()) {
+            itemsService.add(ownerId, itemName.trim());
+        }
+        return "redirect:/items/owner/" + ownerId;
+    }
+    
+    /**
+     * Передаём вещь другому владельцу и показываем его вещи
+     *
+     * @param id
+     * @param ownerId
+     * @return
+     */
+    @PatchMapping("/{id}/owner")
+    public String move(@PathVariable("id") int id, @RequestParam("ownerId") int ownerId) {
+        itemsService.move(id, ownerId);
+        return "redirect:/items/owner/" + ownerId;
+    }
+    
+    /**
+     * Удаляем вещь и возвращаемся к вещам её владельца
+     *
+     * @param id
+     * @return
+     */
+    @DeleteMapping("/{id}")
+    public String delete(@PathVariable("id") int id) {
+        Item item = itemsService.delete(id);
+        if (item == null || item.getOwner() == null) {
+            return "redirect:/items";
+        }
+        return "redirect:/items/owner/" + item.getOwner().getId();
+    }
+    
+    @ExceptionHandler(EntityNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ResponseBody
+    public String notFound(EntityNotFoundException e) {
+        return e.getMessage();
+    }
+}
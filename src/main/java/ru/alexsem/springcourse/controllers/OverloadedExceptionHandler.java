@@ -0,0 +1,28 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * Общий для всех контроллеров с асинхронными обработчиками (пул SpringConfig.requestExecutor)
+ */
+@ControllerAdvice
+public class OverloadedExceptionHandler {
+    
+    /**
+     * Очередь пула асинхронных обработчиков (или буфер MoodUpdateBuffer) заполнена - сразу отвечаем 503,
+     * клиент (или балансировщик) повторит запрос позже
+     *
+     * @return
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Server is busy, try again later");
+    }
+}
@@ -1,15 +1,43 @@
 package ru.alexsem.springcourse.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import ru.alexsem.springcourse.cache.PeoplePageCache;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.io.ExportFormat;
+import ru.alexsem.springcourse.io.ImportFormatException;
+import ru.alexsem.springcourse.io.PersonCsvReader;
+import ru.alexsem.springcourse.io.PersonJsonReader;
+import ru.alexsem.springcourse.models.Mood;
 import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.DuplicateEmailException;
+import ru.alexsem.springcourse.services.ExportService;
 import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.MoodUpdateBuffer;
 import ru.alexsem.springcourse.services.PeopleService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  *
@@ -26,31 +54,102 @@ public class PeopleController {
     
     private final PeopleService peopleService;
     private final ItemsService itemsService;
+    private final ExportService exportService;
+    private final MoodUpdateBuffer moodUpdateBuffer;
+//    Те же проверки, что и у @Valid Person, - для импорта (см. SpringConfig.getValidator)
+    private final Validator validator;
+//    Пул для асинхронных обработчиков (см. SpringConfig.requestExecutor)
+    private final Executor requestExecutor;
     
     @Autowired
-    public PeopleController(PeopleService peopleService, ItemsService itemsService) {
+    public PeopleController(PeopleService peopleService, ItemsService itemsService,
+                            ExportService exportService, MoodUpdateBuffer moodUpdateBuffer,
+                            @Qualifier("mvcValidator") Validator validator,
+                            @Qualifier("requestExecutor") Executor requestExecutor) {
         this.peopleService = peopleService;
         this.itemsService = itemsService;
+        this.exportService = exportService;
+        this.moodUpdateBuffer = moodUpdateBuffer;
+        this.validator = validator;
+        this.requestExecutor = requestExecutor;
     }
     
     /**
-     * Получаем все записи с сервера(DB->DAO->Controller->View)
+     * Получаем страницу записей с сервера(DB->DAO->Controller->View)
      * ПЕРЕДАЁМ ДАННЫЕ НА ПРЕДСТАВЛЕНИЕ ЧЕРЕЗ МОДЕЛЬ (КОНТЕЙНЕР НАШЕГО
      * ПРИЛОЖЕНИЯ) В ФОРМАТЕ КЛЮЧ-ЗНАЧЕНИЕ
      *
+     * Keyset пагинация: /people?after=id - следующая страница,
+     * /people?before=id - предыдущая (см. KeysetPage)
+     * Готовая страница кэшируется (см. PeoplePageCache)
+     *
+     * Асинхронно: поток контейнера освобождается на время запроса к БД,
+     * шаблон отрисовывается после завершения CompletableFuture
+     *
+     * @param after
+     * @param before
+     * @param size
      * @param model
+     * @param request
      * @return
      */
     @GetMapping()
-    public String index(Model model) {
-        model.addAttribute("people", peopleService.findAll());
-        
+    public CompletableFuture<String> index(@RequestParam(value = "after", required = false) Integer after,
+                        @RequestParam(value = "before", required = false) Integer before,
+                        @RequestParam(value = "size", required = false) Integer size,
+                        Model model, HttpServletRequest request) {
 //        Эти методы для примера работы с debug:
 //        itemsService.findByItemName("Airpods");
 //        itemsService.findByOwner(peopleService.findAll().get(0));
 //        peopleService.test();
         
-        return "people/index";
+        return CompletableFuture.supplyAsync(() -> {
+//            Только id, name, age - больше шаблону ничего не нужно (один SQL-запрос)
+            KeysetPage<PersonSummary> page = peopleService.findPage(after, before, size);
+            model.addAttribute("page", page);
+            PeoplePageCache.markCacheable(request, after, before, page);
+            return "people/index";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Люди вместе с вещами (/people/with-items), keyset пагинация как в index.
+     * Вещи загружаются тем же запросом (граф Person.items), а не по запросу на человека
+     *
+     * @param after
+     * @param before
+     * @param size
+     * @param model
+     * @return
+     */
+    @GetMapping("/with-items")
+    public CompletableFuture<String> withItems(@RequestParam(value = "after", required = false) Integer after,
+                                               @RequestParam(value = "before", required = false) Integer before,
+                                               @RequestParam(value = "size", required = false) Integer size,
+                                               Model model) {
+        return CompletableFuture.supplyAsync(() -> {
+            model.addAttribute("page", peopleService.findPageWithItems(after, before, size));
+            return "people/with-items";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Поиск людей по имени и email (/people/search?q=...)
+     *
+     * @param query
+     * @param size
+     * @param model
+     * @return
+     */
+    @GetMapping("/search")
+    public CompletableFuture<String> search(@RequestParam(value = "q", defaultValue = "") String query,
+                                            @RequestParam(value = "size", required = false) Integer size,
+                                            Model model) {
+        model.addAttribute("query", query);
+        return CompletableFuture.supplyAsync(() -> {
+            model.addAttribute("people", peopleService.search(query, size));
+            return "people/search";
+        }, requestExecutor);
     }
     
     /**
@@ -58,14 +157,66 @@ public class PeopleController {
      * ПЕРЕДАЁМ ДАННЫЕ НА ПРЕДСТАВЛЕНИЕ ЧЕРЕЗ МОДЕЛЬ (КОНТЕЙНЕР НАШЕГО
      * ПРИЛОЖЕНИЯ) В ФОРМАТЕ КЛЮЧ-ЗНАЧЕНИЕ
      *
+     * Готовая страница кэшируется (см. PeoplePageCache)
+     *
      * @param id
      * @param model
+     * @param request
      * @return
      */
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model) {
-        model.addAttribute("person", peopleService.findOne(id));
-        return "people/show";
+    public CompletableFuture<String> show(@PathVariable("id") int id, Model model, HttpServletRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
+//            Только id, name, age, email (проекция PersonDetails, без сущности)
+            model.addAttribute("person", peopleService.findDetails(id));
+            PeoplePageCache.markCacheable(request, id, id);
+            return "people/show";
+        }, requestExecutor);
+    }
+    
+    /**
+     * Выгрузка всех людей (/people/export?format=csv|ndjson).
+     * Пишем прямо в поток ответа, строки читаются из БД курсором.
+     * Неизвестный format - 400.
+     *
+     * @param format
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("/export")
+    public void export(@RequestParam(value = "format", defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat = prepareExport(format, "people", response);
+        exportService.exportPeople(exportFormat, response.getWriter());
+    }
+    
+    /**
+     * Выгрузка всех вещей (/people/export/items?format=csv|ndjson)
+     *
+     * @param format
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("/export/items")
+    public void exportItems(@RequestParam(value = "format", defaultValue = "csv") String format,
+                            HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat = prepareExport(format, "items", response);
+        exportService.exportItems(exportFormat, response.getWriter());
+    }
+    
+    private ExportFormat prepareExport(String format, String fileName, HttpServletResponse response) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Unknown export format " + format + ", expected csv or ndjson");
+        }
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition",
+                "attachment; filename=\"" + fileName + "." + exportFormat.getExtension() + "\"");
+        return exportFormat;
     }
     
     /**
@@ -116,10 +267,48 @@ public class PeopleController {
         if (bindingResult.hasErrors()) {
             return "people/new";
         }
-        peopleService.save(person);
+        try {
+            peopleService.save(person);
+        } catch (DuplicateEmailException e) {
+            rejectDuplicateEmail(bindingResult);
+            return "people/new";
+        }
         return "redirect:/people";
     }
     
+    /**
+     * Массовый импорт людей (с вещами) из тела POST-запроса.
+     * Тело читается потоково, поэтому файл может быть любого размера.
+     * text/csv: name,age,email,items (вещи через ';'), первая строка - заголовок
+     * application/x-ndjson: {"name":..,"age":..,"email":..,"items":[..]} на каждой строке
+     * Строка в другом формате или не прошедшая валидацию (как форма @Valid Person) - 400 с её номером,
+     * email, который уже есть (в БД или выше в файле), - 409. В обоих случаях импорт откатывается целиком
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    @ResponseBody
+    public String importPeople(HttpServletRequest request) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        Iterator<Person> people = request.getContentType().startsWith("text/csv")
+                ? new PersonCsvReader(reader, validator)
+                : new PersonJsonReader(reader, validator);
+        try {
+            return "Imported " + peopleService.importPeople(people) + " people";
+        } catch (ImportFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (DataIntegrityViolationException e) {
+//            Строка с нарушением неизвестна: INSERT-ы уходят пачками
+            if (DuplicateEmailException.isDuplicateEmail(e)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Some of the emails already exist", e);
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Data violates database constraints", e);
+        }
+    }
+    
     /**
      * Метод возвращает с сервера html-страницу для редактирования человека.
      * Аннотация @PathVariable("id") позволяет извлечь id из адреса запроса
@@ -134,9 +323,11 @@ public class PeopleController {
      * @return
      */
     @GetMapping("/{id}/edit")
-    public String edit(Model model, @PathVariable("id") int id) {
-        model.addAttribute("person", peopleService.findOne(id));
-        return "people/edit";
+    public CompletableFuture<String> edit(Model model, @PathVariable("id") int id) {
+        return CompletableFuture.supplyAsync(() -> {
+            model.addAttribute("person", peopleService.findOne(id));
+            return "people/edit";
+        }, requestExecutor);
     }
     
     /**
@@ -157,14 +348,55 @@ public class PeopleController {
     
     @PatchMapping("/{id}")
     public String update(@ModelAttribute("person") @Valid Person person, BindingResult bindingResult,
-                         @PathVariable("id") int id) {
+                         @PathVariable("id") int id, HttpServletResponse response) {
         if (bindingResult.hasErrors()) {
             return "people/edit";
         }
-        peopleService.update(id, person);
+        try {
+            peopleService.update(id, person);
+        } catch (DuplicateEmailException e) {
+            rejectDuplicateEmail(bindingResult);
+            return "people/edit";
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return conflict(person, bindingResult, id, response);
+        }
         return "redirect:/people";
     }
     
+    /**
+     * Пока форма была открыта, человека изменил кто-то другой (версия из скрытого поля устарела).
+     * Последнее сохранение не должно молча затирать чужое: 409 и та же форма с ошибкой.
+     * Введённые значения остаются, а версия в форме - текущая: повторная отправка
+     * сохранит их уже осознанно (поэтому текущее состояние читается с primary - findCurrent).
+     * Если человека удалили - к списку
+     */
+    private String conflict(Person person, BindingResult bindingResult, int id, HttpServletResponse response) {
+        PersonDetails current = peopleService.findCurrent(id);
+        if (current == null) {
+            return "redirect:/people";
+        }
+        person.setVersion(current.getVersion());
+        bindingResult.reject("conflict", "This person has just been changed by someone else: now "
+                + current.getName() + ", " + current.getAge() + ", " + current.getEmail()
+                + ". Submit again to overwrite");
+        response.setStatus(HttpServletResponse.SC_CONFLICT);
+        return "people/edit";
+    }
+    
+    /**
+     * Смена настроения: PATCH /people/{id}/mood?mood=HAPPY (или полем формы с _method=patch).
+     * Изменение только попадает в буфер (MoodUpdateBuffer) и пишется в БД пачкой позже -
+     * отвечаем 202 Accepted без тела. Буфер заполнен - 503 (OverloadedExceptionHandler)
+     *
+     * @param id
+     * @param mood
+     */
+    @PatchMapping("/{id}/mood")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void updateMood(@PathVariable("id") int id, @RequestParam("mood") Mood mood) {
+        moodUpdateBuffer.offer(id, mood);
+    }
+    
     /**
      * View->Controller->DAO->DB
      * Метод принимает Delete-запрос
@@ -177,4 +409,9 @@ public class PeopleController {
         peopleService.delete(id);
         return "redirect:/people";
     }
+    
+    //    Уникальность email проверяет БД (см. PeopleService.save) - ошибка показывается у поля, как при валидации
+    static void rejectDuplicateEmail(Errors errors) {
+        errors.rejectValue("email", "duplicate", "This email is already taken");
+    }
 }
@@ -0,0 +1,233 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.util.DigestUtils;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonPatch;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.io.PeopleJsonWriter;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.DuplicateEmailException;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON API для других сервисов - те же операции, что в PeopleController, но без HTML.
+ * Ответ пишется PeopleJsonWriter прямо из проекций (PersonSummary, PersonDetails).
+ * Большие ответы сжимаются (GzipResponseFilter, /api/*).
+ *
+ * Условные запросы: ETag человека - сильный "v<version>" (version меняется при каждом изменении),
+ * ETag страницы - слабый, хэш id и version всех людей на ней и курсоров.
+ * Если у клиента та же версия (If-None-Match) - 304 без тела.
+ * Last-Modified не отдаём: в person есть только created_at, время изменения не хранится.
+ * PATCH принимает версию в If-Match (или в теле) - при конфликте 412 (409 без If-Match).
+ * If-Match сравнивается строго (RFC 7232): слабый ETag с ним не совпадает никогда
+ */
+@RestController
+@RequestMapping("/api/people")
+public class PeopleRestController {
+    
+    private final PeopleService peopleService;
+    private final ItemsService itemsService;
+    private final Validator validator;
+    
+    @Autowired
+    public PeopleRestController(PeopleService peopleService, ItemsService itemsService,
+                                @Qualifier("mvcValidator") Validator validator) {
+        this.peopleService = peopleService;
+        this.itemsService = itemsService;
+        this.validator = validator;
+    }
+    
+    @GetMapping()
+    public void index(@RequestParam(value = "after", required = false) Integer after,
+                      @RequestParam(value = "before", required = false) Integer before,
+                      @RequestParam(value = "size", required = false) Integer size,
+                      ServletWebRequest webRequest, HttpServletResponse response) throws IOException {
+        KeysetPage<PersonSummary> page = peopleService.findPage(after, before, size);
+        if (webRequest.checkNotModified(pageEtag(page))) {
+            return;
+        }
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writePeoplePage(page);
+        }
+    }
+    
+    @GetMapping("/{id}")
+    public void show(@PathVariable("id") int id,
+                     ServletWebRequest webRequest, HttpServletResponse response) throws IOException {
+        PersonDetails person = findDetails(id);
+        if (webRequest.checkNotModified(etag(person.getVersion()))) {
+            return;
+        }
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writePerson(person);
+        }
+    }
+    
+    /**
+     * Вещи человека постранично (keyset по id вещи)
+     */
+    @GetMapping("/{id}/items")
+    public void items(@PathVariable("id") int id,
+                      @RequestParam(value = "after", required = false) Integer after,
+                      @RequestParam(value = "size", required = false) Integer size,
+                      HttpServletResponse response) throws IOException {
+//        Нет человека - 404, как в show, а не пустая страница
+        findDetails(id);
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writeItemsPage(itemsService.findOwnerItems(id, after, size));
+        }
+    }
+    
+    /**
+     * 201 + Location и созданный человек, 400 + ошибки валидации
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void create(@RequestBody @Valid Person person, BindingResult bindingResult,
+                       HttpServletResponse response) throws IOException {
+        if (bindingResult.hasErrors()) {
+            writeErrors(bindingResult, response);
+            return;
+        }
+//        id и версию назначает БД: иначе save() сделал бы merge поверх существующей записи.
+//        Вещи через этот метод не создаются
+        person.setId(0);
+        person.setVersion(0);
+        person.setItems(null);
+        try {
+            peopleService.save(person);
+        } catch (DuplicateEmailException e) {
+            PeopleController.rejectDuplicateEmail(bindingResult);
+            writeErrors(bindingResult, response);
+            return;
+        }
+        
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        response.setHeader(HttpHeaders.LOCATION, "/api/people/" + person.getId());
+        response.setHeader(HttpHeaders.ETAG, etag(person.getVersion()));
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writePerson(new PersonDetails(person.getId(), person.getName(), person.getAge(),
+                    person.getEmail(), person.getVersion()));
+        }
+    }
+    
+    /**
+     * Частичное изменение name, age, email (PeopleService.patch: чтение и запись в одной транзакции на primary).
+     * Версия - из If-Match (устарела - 412) или из тела (устарела - 409)
+     */
+    @PatchMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void update(@PathVariable("id") int id, @RequestBody PersonPatch patch,
+                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                       HttpServletResponse response) throws IOException {
+        Integer version = ifMatch != null ? parseEtag(ifMatch) : patch.getVersion();
+        if (version == null) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "If-Match or version is required");
+        }
+        
+        Person person;
+        try {
+            person = peopleService.patch(id, version, patch, validator);
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person " + id + " not found");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new ResponseStatusException(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT,
+                    "Person " + id + " has been modified, current version is required");
+        } catch (BindException e) {
+            writeErrors(e, response);
+            return;
+        } catch (DuplicateEmailException e) {
+            Errors errors = new BeanPropertyBindingResult(patch, "person");
+            PeopleController.rejectDuplicateEmail(errors);
+            writeErrors(errors, response);
+            return;
+        }
+//        Новое состояние известно без повторного SELECT
+        response.setHeader(HttpHeaders.ETAG, etag(person.getVersion()));
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writePerson(new PersonDetails(id, person.getName(), person.getAge(), person.getEmail(),
+                    person.getVersion()));
+        }
+    }
+    
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable("id") int id) {
+        peopleService.delete(id);
+    }
+    
+    private PersonDetails findDetails(int id) {
+        PersonDetails person = peopleService.findDetails(id);
+        if (person == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person " + id + " not found");
+        }
+        return person;
+    }
+    
+    private static PeopleJsonWriter jsonWriter(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        return new PeopleJsonWriter(response.getOutputStream());
+    }
+    
+    private static void writeErrors(Errors errors, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        try (PeopleJsonWriter json = jsonWriter(response)) {
+            json.writeErrors(errors);
+        }
+    }
+    
+    //    Сильный ETag: ответ о человеке меньше порога сжатия, байты для одной версии всегда те же
+//    (если всё же сжат - GzipResponseFilter делает ETag слабым)
+    private static String etag(int version) {
+        return "\"v" + version + '"';
+    }
+    
+    //    Слабый ETag (W/): страница бывает больше порога сжатия, а сжатые байты другие при том же содержимом
+    private static String pageEtag(KeysetPage<PersonSummary> page) {
+        StringBuilder sb = new StringBuilder()
+                .append(page.getSize()).append(':')
+                .append(page.getNextCursor()).append(':')
+                .append(page.getPreviousCursor());
+        for (PersonSummary person : page.getContent()) {
+            sb.append(';').append(person.getId()).append(':').append(person.getVersion());
+        }
+        return "W/\"" + DigestUtils.md5DigestAsHex(sb.toString().getBytes(StandardCharsets.UTF_8)) + '"';
+    }
+    
+    //    "v3" -> 3. Слабый W/"v3", список ETag, * и чужие ETag - 412
+    private static Integer parseEtag(String etag) {
+        String value = etag.trim();
+        if (value.startsWith("W/")) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                    "Weak ETag " + etag + " never matches If-Match");
+        }
+        if (value.length() < 4 || !value.startsWith("\"v") || !value.endsWith("\"")) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Unknown ETag " + etag);
+        }
+        try {
+            return Integer.valueOf(value.substring(2, value.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Unknown ETag " + etag);
+        }
+    }
+}
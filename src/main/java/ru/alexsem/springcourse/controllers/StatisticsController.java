@@ -0,0 +1,53 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Служебные страницы со статистикой приложения (обычный текст, без Thymeleaf).
+ * Пул соединений, время запросов и транзакций - см. /metrics (MetricsController).
+ * Аннотация @ResponseBody - возвращаемая строка пишется прямо в тело ответа.
+ */
+@Controller
+@RequestMapping("/stats")
+public class StatisticsController {
+    
+    private static final String[] CACHE_REGIONS = {"person", "item", "person.items"};
+    
+    private final Statistics hibernateStatistics;
+    
+    @Autowired
+    public StatisticsController(EntityManagerFactory entityManagerFactory) {
+        this.hibernateStatistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+    
+    @GetMapping(value = "/cache", produces = MediaType.TEXT_PLAIN_VALUE)
+    @ResponseBody
+    public String cache() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("secondLevel hits=").append(hibernateStatistics.getSecondLevelCacheHitCount())
+          .append(" misses=").append(hibernateStatistics.getSecondLevelCacheMissCount())
+          .append(" puts=").append(hibernateStatistics.getSecondLevelCachePutCount()).append('\n');
+        sb.append("queryCache hits=").append(hibernateStatistics.getQueryCacheHitCount())
+          .append(" misses=").append(hibernateStatistics.getQueryCacheMissCount())
+          .append(" puts=").append(hibernateStatistics.getQueryCachePutCount()).append('\n');
+        for (String region : CACHE_REGIONS) {
+            CacheRegionStatistics regionStatistics = hibernateStatistics.getDomainDataRegionStatistics(region);
+            sb.append("region=").append(region)
+              .append(" hits=").append(regionStatistics.getHitCount())
+              .append(" misses=").append(regionStatistics.getMissCount())
+              .append(" puts=").append(regionStatistics.getPutCount())
+              .append(" elements=").append(regionStatistics.getElementCountInMemory()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -66,11 +66,17 @@ public class PersonDAO {
         personToBeUpdated.setEmail(updatedPerson.getEmail());
     }
     
+    //    Без session.get + remove (SELECT и DELETE): два bulk-запроса HQL.
+//    Вещи отвязываем сами, а не через ON DELETE SET NULL в БД - так Hibernate
+//    сбросит их в кэше второго уровня. Persistence context bulk-запросы не обновляют
     @Transactional
     public void delete(int id) {
         Session session = sessionFactory.getCurrentSession();
-        Person person = session.get(Person.class, id);
-        session.remove(person);
-//        либо метод delete();
+        session.createQuery("update versioned Item i set i.owner = null where i.owner.id = :id")
+                .setParameter("id", id)
+                .executeUpdate();
+        session.createQuery("delete from Person p where p.id = :id")
+                .setParameter("id", id)
+                .executeUpdate();
     }
 }
@@ -0,0 +1,68 @@
+package ru.alexsem.springcourse.dao;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Массовая вставка людей с вещами.
+ *
+ * INSERT-ы уходят JDBC batch-ами (hibernate.jdbc.batch_size, order_inserts),
+ * а каждые batchSize записей делаем flush + clear: иначе persistence context
+ * держал бы в памяти все вставленные сущности до конца транзакции.
+ * @Repository - нарушение ограничений БД при flush приходит как DataIntegrityViolationException.
+ */
+@Repository
+public class PersonImportDAO {
+    
+    private final EntityManager entityManager;
+    private final int batchSize;
+    
+    @Autowired
+    public PersonImportDAO(EntityManager entityManager,
+                           @Value("${hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * @param people       поток людей (читается по одному, целиком в память не загружается)
+     * @param beforePersist вызывается для каждого человека перед вставкой
+     * @return количество вставленных людей
+     */
+    @Transactional
+    public int persistAll(Iterator<Person> people, Consumer<Person> beforePersist) {
+        Session session = entityManager.unwrap(Session.class);
+//        Не заполняем кэш второго уровня сотнями тысяч только что вставленных записей
+        session.setCacheMode(CacheMode.IGNORE);
+        
+        int count = 0;
+        while (people.hasNext()) {
+            Person person = people.next();
+            beforePersist.accept(person);
+            session.persist(person);
+            if (person.getItems() != null) {
+                for (Item item : person.getItems()) {
+                    session.persist(item);
+                }
+            }
+            
+            if (++count % batchSize == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+//        Последняя пачка - здесь, а не при коммите
+        session.flush();
+        return count;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.alexsem.springcourse.dao;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.alexsem.springcourse.models.Mood;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.Map;
+
+/**
+ * Запись настроений, накопленных MoodUpdateBuffer.
+ *
+ * Один JDBC batch "update Person set mood = ? where id = ?" без загрузки сущностей.
+ * Через Hibernate (dirty checking) каждый UPDATE увеличивал бы version, и у человека,
+ * которого в это время редактируют в форме, сохранение падало бы с конфликтом версий.
+ * Bulk-запрос HQL сбросил бы весь регион "person" кэша второго уровня -
+ * поэтому после коммита сбрасываем в кэше только изменённых людей.
+ */
+@Component
+public class PersonMoodDAO {
+    
+    private final EntityManager entityManager;
+    
+    @Autowired
+    public PersonMoodDAO(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+    
+    /**
+     * @param moods id человека -> новое настроение. Несуществующие id пропускаются (UPDATE без строк)
+     */
+    @Transactional
+    public void updateMoods(Map<Integer, Mood> moods) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "update Person set mood = ? where id = ?")) {
+                for (Map.Entry<Integer, Mood> entry : moods.entrySet()) {
+                    if (entry.getValue() == null) {
+                        statement.setNull(1, Types.VARCHAR);
+                    } else {
+                        statement.setString(1, entry.getValue().name());
+                    }
+                    statement.setInt(2, entry.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        
+        javax.persistence.Cache cache = entityManager.getEntityManagerFactory().getCache();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                moods.keySet().forEach(id -> cache.evict(Person.class, id));
+            }
+        });
+    }
+}
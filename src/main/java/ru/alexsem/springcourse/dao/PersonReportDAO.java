@@ -0,0 +1,115 @@
+package ru.alexsem.springcourse.dao;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.alexsem.springcourse.dto.AgeCount;
+import ru.alexsem.springcourse.dto.DailyCount;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.models.Mood;
+
+import javax.persistence.EntityManager;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Отчёты по всей таблице Person через StatelessSession.
+ *
+ * У StatelessSession нет persistence context: прочитанное не копится в памяти
+ * до конца транзакции, не хранятся снимки и не делается dirty checking при flush.
+ * Кэш второго уровня не читается и не заполняется - отчёт не вытесняет из него "горячие" записи.
+ *
+ * Строки читаются проекцией (PersonDetails), а не сущностями Person: при scroll сущность
+ * собирается по строке через загрузчик Hibernate (гидратация, прокси для items, createdAt и
+ * dateOfBirth) - это дороже, чем весь persistence context обычной сессии (PersonReportBenchmark).
+ *
+ * StatelessSession работает на соединении текущей транзакции: readOnly-транзакция
+ * уходит на реплику (ReadWriteRoutingDataSource), а запросы видны в QueryStats и /metrics.
+ */
+@Component
+public class PersonReportDAO {
+    
+    private final EntityManager entityManager;
+//    Сколько строк драйвер забирает из БД за раз (PostgreSQL: серверный курсор внутри транзакции)
+    private final int fetchSize;
+    
+    @Autowired
+    public PersonReportDAO(EntityManager entityManager,
+                           @Value("${reports.fetch_size:1000}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.fetchSize = fetchSize;
+    }
+    
+    /**
+     * Все люди с таким настроением, по одному: в памяти одновременно не больше fetchSize строк
+     *
+     * @param mood   настроение
+     * @param action вызывается для каждого человека
+     * @return количество людей
+     */
+    @Transactional(readOnly = true)
+    public long forEachWithMood(Mood mood, Consumer<PersonDetails> action) {
+        return inStatelessSession(session -> {
+            long count = 0;
+            try (ScrollableResults results = session
+                    .createQuery("select new ru.alexsem.springcourse.dto.PersonDetails(p.id, p.name, p.age, p.email, p.version) " +
+                                 "from Person p where p.mood = :mood order by p.id", PersonDetails.class)
+                    .setParameter("mood", mood)
+                    .setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    action.accept((PersonDetails) results.get(0));
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+    
+    /**
+     * @return сколько людей каждого возраста, по возрастанию возраста
+     */
+    @Transactional(readOnly = true)
+    public List<AgeCount> ageDistribution() {
+        return inStatelessSession(session -> session
+                .createQuery("select new ru.alexsem.springcourse.dto.AgeCount(p.age, count(p)) " +
+                             "from Person p group by p.age order by p.age", AgeCount.class)
+                .setReadOnly(true)
+                .getResultList());
+    }
+    
+    /**
+     * @param from начало периода (включительно)
+     * @param to   конец периода (не включительно)
+     * @return сколько людей добавлено в каждый день периода (по createdAt), дни без добавлений пропущены
+     */
+    @Transactional(readOnly = true)
+    public List<DailyCount> createdPerDay(Date from, Date to) {
+        return inStatelessSession(session -> session
+                .createQuery("select new ru.alexsem.springcourse.dto.DailyCount(cast(p.createdAt as date), count(p)) " +
+                             "from Person p where p.createdAt >= :from and p.createdAt < :to " +
+                             "group by cast(p.createdAt as date) order by cast(p.createdAt as date)", DailyCount.class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setReadOnly(true)
+                .getResultList());
+    }
+    
+    //    Соединение берём у сессии текущей транзакции, закрывает его транзакция, а не StatelessSession
+    private <T> T inStatelessSession(Function<StatelessSession, T> work) {
+        Session current = entityManager.unwrap(Session.class);
+        return current.doReturningWork(connection -> {
+            try (StatelessSession session = current.getSessionFactory().openStatelessSession(connection)) {
+                return work.apply(session);
+            }
+        });
+    }
+}
@@ -0,0 +1,93 @@
+package ru.alexsem.springcourse.dao;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.alexsem.springcourse.models.Mood;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.EntityManager;
+import java.util.Date;
+
+/**
+ * Вставка или обновление человека по email одним запросом (upsert).
+ *
+ * Атомарность обеспечивает уникальный индекс person_email_key: из двух одновременных upsert-ов
+ * с одним email один вставит строку, а второй обновит её - без ошибки и без дубликата.
+ * SQL зависит от БД (как и миграции db/migration/postgresql):
+ * PostgreSQL - INSERT ... ON CONFLICT (email) DO UPDATE, H2 (бенчмарки) - ON CONFLICT DO NOTHING и UPDATE.
+ *
+ * Запрос выполняется через executeUpdate с Person в synchronized spaces:
+ * Hibernate сам сбросит регион "person" кэша второго уровня и кэш запросов по person.
+ *
+ * id берётся у генератора Hibernate для Person, а не из DEFAULT nextval('person_id_seq'):
+ * pooled optimizer раздаёт id диапазонами по значениям той же последовательности, и первый
+ * диапазон (когда nextval вернул меньше allocationSize) может включить значение, которое
+ * nextval уже отдал вставке в обход Hibernate - следующий save получил бы дубликат первичного ключа.
+ */
+@Component
+public class PersonUpsertDAO {
+    
+    private static final String POSTGRESQL_UPSERT =
+            "insert into person (id, name, age, email, created_at, mood) values (:id, :name, :age, :email, :createdAt, :mood) " +
+            "on conflict (email) do update set name = excluded.name, age = excluded.age, version = person.version + 1";
+    
+//    H2 (бенчмарки) не умеет ON CONFLICT DO UPDATE, а MERGE в H2 при одновременных вызовах
+//    нарушает уникальный индекс. ON CONFLICT DO NOTHING (режим PostgreSQL) атомарен -
+//    если строка не вставилась, она уже есть, и её можно обновить вторым запросом
+    private static final String H2_INSERT =
+            "insert into person (id, name, age, email, created_at, mood) values (:id, :name, :age, :email, :createdAt, :mood) " +
+            "on conflict do nothing";
+    
+    private static final String H2_UPDATE =
+            "update person set name = :name, age = :age, version = version + 1 where email = :email";
+    
+    private final EntityManager entityManager;
+    private final boolean postgresql;
+    
+    @Autowired
+    public PersonUpsertDAO(EntityManager entityManager, @Value("${hibernate.connection.url}") String url) {
+        this.entityManager = entityManager;
+        this.postgresql = url.startsWith("jdbc:postgresql:");
+    }
+    
+    /**
+     * Новый человек создаётся с mood = CALM и createdAt = сейчас.
+     * У существующего меняются только name и age, версия увеличивается на 1
+     *
+     * @param person name, age и email (email не null)
+     * @return id вставленного или обновлённого человека
+     */
+    @Transactional
+    public int upsertByEmail(Person person) {
+        Session session = entityManager.unwrap(Session.class);
+        SessionImplementor implementor = entityManager.unwrap(SessionImplementor.class);
+//        Если строка с этим email уже есть, id просто пропадёт - как у отменённой вставки
+        Object id = implementor.getFactory().getMetamodel().entityPersister(Person.class)
+                .getIdentifierGenerator().generate(implementor, null);
+        int inserted = session.createNativeQuery(postgresql ? POSTGRESQL_UPSERT : H2_INSERT)
+                .addSynchronizedEntityClass(Person.class)
+                .setParameter("id", id)
+                .setParameter("name", person.getName())
+                .setParameter("age", person.getAge())
+                .setParameter("email", person.getEmail())
+                .setParameter("createdAt", new Date())
+                .setParameter("mood", Mood.CALM.name())
+                .executeUpdate();
+        if (!postgresql && inserted == 0) {
+            session.createNativeQuery(H2_UPDATE)
+                    .addSynchronizedEntityClass(Person.class)
+                    .setParameter("name", person.getName())
+                    .setParameter("age", person.getAge())
+                    .setParameter("email", person.getEmail())
+                    .executeUpdate();
+        }
+//        Строка с этим email точно есть (уникальный индекс) - наша или только что закоммиченная чужая
+        return ((Number) session.createNativeQuery("select id from person where email = :email")
+                .setParameter("email", person.getEmail())
+                .getSingleResult()).intValue();
+    }
+}
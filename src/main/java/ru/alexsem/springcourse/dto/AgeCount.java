@@ -0,0 +1,23 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Сколько людей такого возраста (PersonReportDAO.ageDistribution). Считается в БД (group by)
+ */
+public final class AgeCount {
+    
+    private final int age;
+    private final long peopleCount;
+    
+    public AgeCount(int age, long peopleCount) {
+        this.age = age;
+        this.peopleCount = peopleCount;
+    }
+    
+    public int getAge() {
+        return age;
+    }
+    
+    public long getPeopleCount() {
+        return peopleCount;
+    }
+}
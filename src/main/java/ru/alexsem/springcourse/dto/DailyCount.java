@@ -0,0 +1,25 @@
+package ru.alexsem.springcourse.dto;
+
+import java.util.Date;
+
+/**
+ * Сколько людей добавлено за день (PersonReportDAO.createdPerDay). Считается в БД (group by)
+ */
+public final class DailyCount {
+    
+    private final Date day;
+    private final long peopleCount;
+    
+    public DailyCount(Date day, long peopleCount) {
+        this.day = day;
+        this.peopleCount = peopleCount;
+    }
+    
+    public Date getDay() {
+        return day;
+    }
+    
+    public long getPeopleCount() {
+        return peopleCount;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Строка выгрузки вещей: id владельца берём из внешнего ключа,
+ * сам владелец (Person) не загружается.
+ */
+public interface ItemExportRow {
+    int getId();
+    
+    String getItemName();
+    
+    Integer getOwnerId();
+}
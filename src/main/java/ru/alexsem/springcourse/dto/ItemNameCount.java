@@ -0,0 +1,23 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Сколько вещей с таким названием (items/index.html). Считается в БД (group by)
+ */
+public final class ItemNameCount {
+    
+    private final String itemName;
+    private final long itemCount;
+    
+    public ItemNameCount(String itemName, long itemCount) {
+        this.itemName = itemName;
+        this.itemCount = itemCount;
+    }
+    
+    public String getItemName() {
+        return itemName;
+    }
+    
+    public long getItemCount() {
+        return itemCount;
+    }
+}
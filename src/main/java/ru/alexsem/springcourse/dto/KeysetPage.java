@@ -0,0 +1,52 @@
+package ru.alexsem.springcourse.dto;
+
+import java.util.List;
+
+/**
+ * Страница при keyset (seek) пагинации.
+ *
+ * Вместо номера страницы (OFFSET) храним курсоры - id последней и первой записи.
+ * Следующая страница: where id > :nextCursor order by id limit :size,
+ * предыдущая: where id < :previousCursor order by id desc limit :size.
+ * Поэтому страница 10000 стоит столько же, сколько первая (идём по индексу первичного ключа).
+ *
+ * Курсор равен null, если в эту сторону записей больше нет.
+ */
+public class KeysetPage<T> {
+    
+    private final List<T> content;
+    private final int size;
+    private final Integer nextCursor;
+    private final Integer previousCursor;
+    
+    public KeysetPage(List<T> content, int size, Integer nextCursor, Integer previousCursor) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
+    }
+    
+    public List<T> getContent() {
+        return content;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+    
+    public Integer getPreviousCursor() {
+        return previousCursor;
+    }
+    
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+    
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+}
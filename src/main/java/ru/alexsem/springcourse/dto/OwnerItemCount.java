@@ -0,0 +1,32 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Количество вещей у владельца (items/owners.html, items/index.html).
+ *
+ * Считается в БД (group by), сами вещи не загружаются.
+ * Как и PersonDetails - класс, который Hibernate создаёт через select new ...
+ */
+public final class OwnerItemCount {
+    
+    private final int ownerId;
+    private final String ownerName;
+    private final long itemCount;
+    
+    public OwnerItemCount(int ownerId, String ownerName, long itemCount) {
+        this.ownerId = ownerId;
+        this.ownerName = ownerName;
+        this.itemCount = itemCount;
+    }
+    
+    public int getOwnerId() {
+        return ownerId;
+    }
+    
+    public String getOwnerName() {
+        return ownerName;
+    }
+    
+    public long getItemCount() {
+        return itemCount;
+    }
+}
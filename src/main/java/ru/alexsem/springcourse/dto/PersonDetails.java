@@ -0,0 +1,47 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Проекция Person для страницы человека (people/show.html) и отчётов (PersonReportDAO.forEachWithMood).
+ *
+ * Класс, а не интерфейс (как PersonSummary): Hibernate создаёт объект прямо
+ * из строки результата (select new ...), без прокси Spring Data поверх Tuple.
+ * Не сущность - не попадает в persistence context: ни снимка полей для dirty checking,
+ * ни createdAt/dateOfBirth, ни прокси для items.
+ */
+public final class PersonDetails {
+    
+    private final int id;
+    private final String name;
+    private final int age;
+    private final String email;
+//    Для ETag в JSON API (PeopleRestController)
+    private final int version;
+    
+    public PersonDetails(int id, String name, int age, String email, int version) {
+        this.id = id;
+        this.name = name;
+        this.age = age;
+        this.email = email;
+        this.version = version;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getAge() {
+        return age;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+}
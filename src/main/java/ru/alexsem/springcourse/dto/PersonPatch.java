@@ -0,0 +1,45 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Тело PATCH /api/people/{id}: только изменяемые поля, null - оставить как есть.
+ * version - версия, которую клиент видел (или заголовок If-Match)
+ */
+public class PersonPatch {
+    
+    private String name;
+    private Integer age;
+    private String email;
+    private Integer version;
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Integer getAge() {
+        return age;
+    }
+    
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public Integer getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.alexsem.springcourse.dto;
+
+/**
+ * Проекция (projection) Person для списка людей (people/index.html).
+ *
+ * Spring Data по интерфейсу сам строит запрос
+ * select p.id, p.name, p.age, p.version from Person p - выбираются только эти колонки,
+ * сущности не создаются и не попадают в persistence context.
+ */
+public interface PersonSummary {
+    int getId();
+    
+    String getName();
+    
+    int getAge();
+    
+    //    Для ETag страницы в JSON API (PeopleRestController)
+    int getVersion();
+}
@@ -0,0 +1,43 @@
+package ru.alexsem.springcourse.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public class CsvExportWriter implements ExportWriter {
+    
+    private final Writer writer;
+    
+    public CsvExportWriter(Writer writer, String... columns) {
+        this.writer = writer;
+        try {
+            writeRow((Object[]) columns);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    @Override
+    public void writeRow(Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writer.write(escape(ExportWriter.format(values[i])));
+            }
+        }
+        writer.write('\n');
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+    
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,31 @@
+package ru.alexsem.springcourse.io;
+
+import java.io.Writer;
+
+/**
+ * Форматы выгрузки данных
+ */
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+    
+    private final String contentType;
+    private final String extension;
+    
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    public ExportWriter newWriter(Writer writer, String... columns) {
+        return this == CSV ? new CsvExportWriter(writer, columns) : new NdjsonExportWriter(writer, columns);
+    }
+}
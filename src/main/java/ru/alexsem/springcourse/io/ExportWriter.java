@@ -0,0 +1,27 @@
+package ru.alexsem.springcourse.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Построчная запись выгрузки. Каждая строка сразу уходит в Writer,
+ * ничего не накапливается в памяти.
+ */
+public interface ExportWriter extends Flushable {
+    
+    void writeRow(Object... values) throws IOException;
+    
+    /**
+     * java.sql.Date (колонка DATE) не поддерживает toInstant(), поэтому отдельно
+     */
+    static String format(Object value) {
+        if (value instanceof java.sql.Date) {
+            return value.toString();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toInstant().toString();
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,199 @@
+package ru.alexsem.springcourse.io;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжатие ответов JSON API (gzip), если клиент его принимает (Accept-Encoding: gzip).
+ * Первые compression.min_size байт ответа копятся в буфере: маленький ответ уходит как есть
+ * (сжатие не окупается), большой - сжимается потоком, по мере записи, без буферизации тела целиком.
+ * Только для синхронных обработчиков: сжатый поток завершается сразу после обработки запроса.
+ * Сильный ETag сжатого ответа становится слабым (W/): он обещает побайтно одинаковое тело,
+ * а сжатые байты отличаются от несжатых.
+ * Регистрируется в MySpringMvcDispatcherSerlvetIntitializer через DelegatingFilterProxy
+ */
+@Component
+public class GzipResponseFilter extends OncePerRequestFilter {
+    
+    private final int minSize;
+    
+    @Autowired
+    public GzipResponseFilter(@Value("${compression.min_size:1024}") int minSize) {
+        this.minSize = minSize;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding == null || !acceptEncoding.contains("gzip") || "HEAD".equals(request.getMethod());
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+//        Ответ зависит от Accept-Encoding - прокси не должны отдавать сжатый ответ тем, кто не просил
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        GzipResponseWrapper wrapper = new GzipResponseWrapper(response, minSize);
+        chain.doFilter(request, wrapper);
+        wrapper.finish();
+    }
+    
+    private static class GzipResponseWrapper extends HttpServletResponseWrapper {
+        
+        private final ThresholdOutputStream stream;
+        private PrintWriter writer;
+        
+        GzipResponseWrapper(HttpServletResponse response, int minSize) {
+            super(response);
+            this.stream = new ThresholdOutputStream(response, minSize);
+        }
+        
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream;
+        }
+        
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+        
+        //        Длину тела знаем только в конце (см. ThresholdOutputStream.finish)
+        @Override
+        public void setContentLength(int len) {
+        }
+        
+        @Override
+        public void setContentLengthLong(long len) {
+        }
+        
+        @Override
+        public void setHeader(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+        
+        @Override
+        public void addHeader(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addHeader(name, value);
+            }
+        }
+        
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.flush();
+        }
+        
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.finish();
+        }
+    }
+    
+    private static class ThresholdOutputStream extends ServletOutputStream {
+        
+        private final HttpServletResponse response;
+        private final byte[] buffer;
+        private int count;
+        private GZIPOutputStream gzip;
+        private boolean finished;
+        
+        ThresholdOutputStream(HttpServletResponse response, int minSize) {
+            this.response = response;
+            this.buffer = new byte[minSize];
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (gzip == null && count + len <= buffer.length) {
+                System.arraycopy(bytes, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            if (gzip == null) {
+                startGzip();
+            }
+            gzip.write(bytes, off, len);
+        }
+        
+        private void startGzip() throws IOException {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            String etag = response.getHeader(HttpHeaders.ETAG);
+            if (etag != null && !etag.startsWith("W/")) {
+                response.setHeader(HttpHeaders.ETAG, "W/" + etag);
+            }
+//            syncFlush: flush() отправляет клиенту всё, что уже сжато
+            gzip = new GZIPOutputStream(response.getOutputStream(), 8192, true);
+            gzip.write(buffer, 0, count);
+            count = 0;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if (gzip != null) {
+                gzip.flush();
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+        
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (gzip != null) {
+                gzip.finish();
+            } else if (count > 0) {
+                response.setContentLength(count);
+                response.getOutputStream().write(buffer, 0, count);
+            }
+        }
+        
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("Non-blocking output is not supported");
+        }
+    }
+}
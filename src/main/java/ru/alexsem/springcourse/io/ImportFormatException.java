@@ -0,0 +1,37 @@
+package ru.alexsem.springcourse.io;
+
+import org.springframework.validation.BindException;
+import org.springframework.validation.ObjectError;
+import org.springframework.validation.Validator;
+import ru.alexsem.springcourse.models.Person;
+
+/**
+ * Строка импортируемого файла не разбирается или не проходит валидацию (PersonCsvReader, PersonJsonReader).
+ * Сообщение начинается с номера строки: "Line 3: age should be a number"
+ */
+public class ImportFormatException extends RuntimeException {
+    
+    private final int lineNumber;
+    
+    public ImportFormatException(int lineNumber, String message, Throwable cause) {
+        super("Line " + lineNumber + ": " + message, cause);
+        this.lineNumber = lineNumber;
+    }
+    
+    public int getLineNumber() {
+        return lineNumber;
+    }
+    
+    /**
+     * Проверка прочитанного человека теми же правилами, что и форма (@Valid Person).
+     * Первое нарушение - ImportFormatException: "Line 2: Name should be between 2 and 30 characters"
+     */
+    static void validate(Validator validator, Person person, int lineNumber) {
+        BindException errors = new BindException(person, "person");
+        validator.validate(person, errors);
+        if (errors.hasErrors()) {
+            ObjectError error = errors.getAllErrors().get(0);
+            throw new ImportFormatException(lineNumber, error.getDefaultMessage(), errors);
+        }
+    }
+}
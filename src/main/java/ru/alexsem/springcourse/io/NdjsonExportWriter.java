@@ -0,0 +1,51 @@
+package ru.alexsem.springcourse.io;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Один JSON-объект на строку. JsonGenerator пишет прямо в Writer,
+ * без построения дерева объектов.
+ */
+public class NdjsonExportWriter implements ExportWriter {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    
+    private final JsonGenerator generator;
+    private final String[] columns;
+    
+    public NdjsonExportWriter(Writer writer, String... columns) {
+        this.columns = columns;
+        try {
+            this.generator = JSON_FACTORY.createGenerator(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        generator.setRootValueSeparator(null);
+    }
+    
+    @Override
+    public void writeRow(Object... values) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                generator.writeNullField(columns[i]);
+            } else if (value instanceof Integer) {
+                generator.writeNumberField(columns[i], (Integer) value);
+            } else {
+                generator.writeStringField(columns[i], ExportWriter.format(value));
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+}
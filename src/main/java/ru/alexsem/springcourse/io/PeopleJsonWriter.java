@@ -0,0 +1,109 @@
+package ru.alexsem.springcourse.io;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Item;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JSON для PeopleRestController. Как и NdjsonExportWriter, JsonGenerator пишет
+ * прямо в поток ответа - без ObjectMapper, рефлексии и промежуточного дерева объектов.
+ * close() не закрывает сам поток ответа (его закрывает контейнер)
+ */
+public class PeopleJsonWriter implements Closeable {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    
+    private final JsonGenerator generator;
+    
+    public PeopleJsonWriter(OutputStream out) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+    
+    /**
+     * {"content":[{"id":..,"name":..,"age":..}, ...],"size":..,"next":..,"previous":..}
+     */
+    public void writePeoplePage(KeysetPage<PersonSummary> page) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("content");
+        for (PersonSummary person : page.getContent()) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", person.getId());
+            generator.writeStringField("name", person.getName());
+            generator.writeNumberField("age", person.getAge());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        writeCursors(page);
+        generator.writeEndObject();
+    }
+    
+    public void writePerson(PersonDetails person) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", person.getId());
+        generator.writeStringField("name", person.getName());
+        generator.writeNumberField("age", person.getAge());
+        generator.writeStringField("email", person.getEmail());
+        generator.writeNumberField("version", person.getVersion());
+        generator.writeEndObject();
+    }
+    
+    /**
+     * {"content":[{"id":..,"itemName":..}, ...],"size":..,"next":..,"previous":null}
+     */
+    public void writeItemsPage(KeysetPage<Item> page) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("content");
+        for (Item item : page.getContent()) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", item.getId());
+            generator.writeStringField("itemName", item.getItemName());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        writeCursors(page);
+        generator.writeEndObject();
+    }
+    
+    /**
+     * Ошибки валидации: {"errors":{"поле":"сообщение", ...}}
+     */
+    public void writeErrors(Errors errors) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("errors");
+        for (FieldError error : errors.getFieldErrors()) {
+            generator.writeStringField(error.getField(), error.getDefaultMessage());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+    
+    private void writeCursors(KeysetPage<?> page) throws IOException {
+        generator.writeNumberField("size", page.getSize());
+        writeNullableNumberField("next", page.getNextCursor());
+        writeNullableNumberField("previous", page.getPreviousCursor());
+    }
+    
+    private void writeNullableNumberField(String name, Integer value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(name);
+        } else {
+            generator.writeNumberField(name, value);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
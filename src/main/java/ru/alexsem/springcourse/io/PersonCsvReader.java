@@ -0,0 +1,112 @@
+package ru.alexsem.springcourse.io;
+
+import org.springframework.validation.Validator;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Читает людей из CSV построчно (поток не загружается в память целиком).
+ *
+ * Формат: name,age,email[,items] - вещи через ';'. Первая строка - заголовок,
+ * пустые строки пропускаются. Значения в двойных кавычках могут содержать запятые.
+ * Строка в другом формате или не прошедшая валидацию - ImportFormatException с её номером.
+ */
+public class PersonCsvReader implements Iterator<Person> {
+    
+    private final BufferedReader reader;
+    private final Validator validator;
+    private int lineNumber;
+    private String nextLine;
+    
+    public PersonCsvReader(BufferedReader reader, Validator validator) {
+        this.reader = reader;
+        this.validator = validator;
+//        Пропускаем заголовок
+        readLine();
+        this.nextLine = readLine();
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+    
+    @Override
+    public Person next() {
+        if (nextLine == null) {
+            throw new NoSuchElementException();
+        }
+        List<String> columns = split(nextLine);
+        if (columns.size() < 3) {
+            throw new ImportFormatException(lineNumber, "expected name,age,email[,items]", null);
+        }
+        
+        Person person = new Person(columns.get(0), parseAge(columns.get(1)));
+        person.setEmail(columns.get(2));
+        
+        List<Item> items = new ArrayList<>();
+        if (columns.size() > 3 && !columns.get(3).isEmpty()) {
+            for (String itemName : columns.get(3).split(";")) {
+                items.add(new Item(itemName.trim(), person));
+            }
+        }
+        person.setItems(items);
+        ImportFormatException.validate(validator, person, lineNumber);
+        
+        nextLine = readLine();
+        return person;
+    }
+    
+    private int parseAge(String age) {
+        try {
+            return Integer.parseInt(age.trim());
+        } catch (NumberFormatException e) {
+            throw new ImportFormatException(lineNumber, "age should be a number", e);
+        }
+    }
+    
+    private String readLine() {
+        try {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+            } while (line != null && line.isBlank());
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static List<String> split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.alexsem.springcourse.io;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.validation.Validator;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Читает людей из NDJSON (один JSON-объект на строку) потоково через Jackson:
+ * {"name":"Tom","age":25,"email":"tom@mail.ru","items":["TV","Airpods"]}
+ * Строка, которая не разбирается или не проходит валидацию, - ImportFormatException с её номером.
+ */
+public class PersonJsonReader implements Iterator<Person> {
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    
+    private final MappingIterator<Row> rows;
+    private final Validator validator;
+    
+    public PersonJsonReader(Reader reader, Validator validator) throws IOException {
+        this.rows = MAPPER.readerFor(Row.class).readValues(reader);
+        this.validator = validator;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return rows.hasNext();
+    }
+    
+    @Override
+    public Person next() {
+        Row row;
+        try {
+            row = rows.next();
+        } catch (RuntimeException e) {
+//            MappingIterator оборачивает JsonProcessingException в RuntimeJsonMappingException
+//            или RuntimeException - номер строки берём у парсера
+            JsonLocation location = rows.getCurrentLocation();
+            String message = e.getCause() instanceof JsonProcessingException
+                    ? ((JsonProcessingException) e.getCause()).getOriginalMessage()
+                    : e.getMessage();
+            throw new ImportFormatException(location == null ? 0 : location.getLineNr(), message, e);
+        }
+        Person person = new Person(row.name, row.age);
+        person.setEmail(row.email);
+        
+        List<Item> items = new ArrayList<>();
+        if (row.items != null) {
+            for (String itemName : row.items) {
+                items.add(new Item(itemName, person));
+            }
+        }
+        person.setItems(items);
+//        Парсер стоит в конце только что прочитанного объекта - на его строке
+        ImportFormatException.validate(validator, person, rows.getCurrentLocation().getLineNr());
+        return person;
+    }
+    
+    /**
+     * Строка NDJSON. Поля публичные - Jackson заполняет их напрямую
+     */
+    static class Row {
+        public String name;
+        public int age;
+        public String email;
+        public List<String> items;
+    }
+}
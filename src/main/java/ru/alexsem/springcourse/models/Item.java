@@ -1,5 +1,8 @@
 package ru.alexsem.springcourse.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 /**
  * Аннотацией @Entity помечаем класс, который связан с бд.
@@ -16,10 +19,16 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "Item")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "item")
 public class Item {
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+//    IDENTITY отключает JDBC batching в Hibernate (id известен только после INSERT).
+//    Последовательность с allocationSize = 50 (pooled optimizer): один nextval на 50 записей.
+//    В БД шаг последовательности должен совпадать: INCREMENT BY 50 (миграции V1 и postgresql/V7_1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_id_seq")
+    @SequenceGenerator(name = "item_id_seq", sequenceName = "item_id_seq", allocationSize = 50)
     private int id;
     
     @Column(name = "item_name")
@@ -31,6 +40,12 @@ public class Item {
     @JoinColumn(name = "person_id", referencedColumnName = "id")
     private Person owner;
     
+//    Оптимистическая блокировка, как у Person: два одновременных изменения одной вещи
+//    не затирают друг друга - второе получает OptimisticLockException
+    @Version
+    @Column(name = "version")
+    private int version;
+    
     public Item() {
     }
     
@@ -63,6 +78,14 @@ public class Item {
         this.owner = owner;
     }
     
+    public int getVersion() {
+        return version;
+    }
+    
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    
     @Override
     public String toString() {
         return "Item{" +
@@ -1,6 +1,10 @@
 package ru.alexsem.springcourse.models;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -28,10 +32,22 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "Person")
+//Граф для загрузки людей вместе с вещами одним запросом (left join fetch),
+//используется в методах репозитория с @EntityGraph("Person.items")
+@NamedEntityGraph(name = "Person.items", attributeNodes = @NamedAttributeNode("items"))
+//Кэш второго уровня: Person часто читают и редко меняют
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person")
+//UPDATE содержит только изменившиеся колонки, а не все поля сущности
+@DynamicUpdate
 public class Person {
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+//    IDENTITY отключает JDBC batching в Hibernate (id известен только после INSERT).
+//    Последовательность с allocationSize = 50 (pooled optimizer): один nextval на 50 записей.
+//    В БД шаг последовательности должен совпадать: INCREMENT BY 50 (миграции V1 и postgresql/V7_1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_id_seq")
+    @SequenceGenerator(name = "person_id_seq", sequenceName = "person_id_seq", allocationSize = 50)
     private int id;
     
     @NotEmpty(message = "Name should not be empty")
@@ -50,6 +66,11 @@ public class Person {
     @OneToMany(mappedBy = "owner", fetch = FetchType.LAZY)
 //    Если сохраняем человека, то автоматически сохраняется связанная сущность:
     @Cascade(org.hibernate.annotations.CascadeType.SAVE_UPDATE)
+//    В кэше коллекции хранятся только id вещей, сами Item - в регионе "item"
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person.items")
+//    Если вещи загружаются лениво (без графа), то при обращении к items одного человека
+//    подгружаются вещи сразу для 50 людей из persistence context: один SELECT ... IN (...) вместо N
+    @BatchSize(size = 50)
     private List<Item> items;
     
     @Column(name = "date_of_birth")
@@ -63,6 +84,12 @@ public class Person {
     @Enumerated(EnumType.STRING)
     private Mood mood;
     
+//    Оптимистическая блокировка: UPDATE ... where id = ? and version = ?
+//    Если строку уже изменили (version другая), обновится 0 строк и Hibernate бросит StaleObjectStateException
+    @Version
+    @Column(name = "version")
+    private int version;
+    
     public Person() {
     }
     
@@ -105,6 +132,14 @@ public class Person {
     
     
     
+    public int getVersion() {
+        return version;
+    }
+    
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    
     public String getEmail() {
         return email;
     }
@@ -0,0 +1,19 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate вызывает inspect() перед подготовкой каждого SQL-запроса.
+ * SQL не меняем - только считаем.
+ */
+public class CountingStatementInspector implements StatementInspector {
+    
+    @Override
+    public String inspect(String sql) {
+        QueryStats stats = QueryCounter.current();
+        if (stats != null) {
+            stats.statementPrepared(sql);
+        }
+        return sql;
+    }
+}
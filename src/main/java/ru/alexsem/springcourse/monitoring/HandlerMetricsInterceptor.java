@@ -0,0 +1,56 @@
+package ru.alexsem.springcourse.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Время обработки каждого метода контроллера, включая отрисовку шаблона.
+ * Метрика http.server.requests с тегами handler (PeopleController.index), method, status, exception.
+ * Для асинхронных обработчиков замер идёт от первого preHandle до afterCompletion после ASYNC dispatch.
+ */
+public class HandlerMetricsInterceptor implements HandlerInterceptor {
+    
+    private static final String SAMPLE_ATTRIBUTE = HandlerMetricsInterceptor.class.getName() + ".sample";
+    
+    private final MeterRegistry registry;
+    
+    public HandlerMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(SAMPLE_ATTRIBUTE) == null) {
+            request.setAttribute(SAMPLE_ATTRIBUTE, Timer.start(registry));
+        }
+        return true;
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Timer.Sample sample = (Timer.Sample) request.getAttribute(SAMPLE_ATTRIBUTE);
+        if (sample == null) {
+            return;
+        }
+        sample.stop(Timer.builder("http.server.requests")
+                .tag("handler", handlerName(handler))
+                .tag("method", request.getMethod())
+                .tag("status", String.valueOf(response.getStatus()))
+                .tag("exception", ex == null ? "none" : ex.getClass().getSimpleName())
+                .register(registry));
+    }
+    
+    private static String handlerName(Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod handlerMethod = (HandlerMethod) handler;
+            return handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+        }
+        return handler.getClass().getSimpleName();
+    }
+}
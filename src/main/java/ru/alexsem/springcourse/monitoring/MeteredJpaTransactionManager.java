@@ -0,0 +1,55 @@
+package ru.alexsem.springcourse.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JpaTransactionManager, который замеряет длительность каждой транзакции
+ * (от begin до commit/rollback): метрика transactions с тегами name (метод сервиса),
+ * read_only и outcome.
+ */
+public class MeteredJpaTransactionManager extends JpaTransactionManager {
+    
+    private final MeterRegistry registry;
+    
+    public MeteredJpaTransactionManager(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    @Override
+    protected void prepareSynchronization(DefaultTransactionStatus status, TransactionDefinition definition) {
+        super.prepareSynchronization(status, definition);
+        if (status.isNewTransaction() && status.isNewSynchronization()) {
+            Timer.Sample sample = Timer.start(registry);
+            String name = definition.getName() == null ? "unnamed" : definition.getName();
+            String readOnly = String.valueOf(definition.isReadOnly());
+            
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int completionStatus) {
+                    sample.stop(Timer.builder("transactions")
+                            .tag("name", name)
+                            .tag("read_only", readOnly)
+                            .tag("outcome", outcome(completionStatus))
+                            .register(registry));
+                }
+            });
+        }
+    }
+    
+    private static String outcome(int completionStatus) {
+        switch (completionStatus) {
+            case TransactionSynchronization.STATUS_COMMITTED:
+                return "committed";
+            case TransactionSynchronization.STATUS_ROLLED_BACK:
+                return "rolled_back";
+            default:
+                return "unknown";
+        }
+    }
+}
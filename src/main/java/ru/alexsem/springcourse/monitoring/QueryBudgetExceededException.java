@@ -0,0 +1,12 @@
+package ru.alexsem.springcourse.monitoring;
+
+/**
+ * Запрос (или блок кода) выполнил больше SQL, чем разрешено бюджетом.
+ * Обычно это N+1: ленивая загрузка коллекции (например, Person.items) в цикле.
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+    
+    public QueryBudgetExceededException(String message) {
+        super(message);
+    }
+}
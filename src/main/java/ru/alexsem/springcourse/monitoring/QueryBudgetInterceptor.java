@@ -0,0 +1,66 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Считает SQL на каждый HTTP-запрос (включая отрисовку шаблона)
+ * и пишет предупреждение в лог, если запрос вышел за бюджет.
+ * В режиме failOnExceed запрос, превысивший бюджет, падает с QueryBudgetExceededException.
+ *
+ * Асинхронный обработчик (CompletableFuture) проходит через интерцептор дважды:
+ * запуск в потоке контейнера и отрисовка после ASYNC dispatch (возможно, в другом потоке).
+ * Счётчики хранятся в атрибуте запроса, в поток пула их переносит QueryStatsTaskDecorator.
+ */
+public class QueryBudgetInterceptor implements AsyncHandlerInterceptor {
+    
+    private static final Log log = LogFactory.getLog(QueryBudgetInterceptor.class);
+    
+    private static final String STATS_ATTRIBUTE = QueryBudgetInterceptor.class.getName() + ".stats";
+    
+    private final int budget;
+    private final boolean failOnExceed;
+    
+    public QueryBudgetInterceptor(int budget, boolean failOnExceed) {
+        this.budget = budget;
+        this.failOnExceed = failOnExceed;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryStats stats = (QueryStats) request.getAttribute(STATS_ATTRIBUTE);
+        if (stats != null) {
+//            ASYNC dispatch: продолжаем считать в тот же QueryStats
+            QueryCounter.attach(stats);
+        } else {
+            request.setAttribute(STATS_ATTRIBUTE, QueryCounter.start(budget, failOnExceed));
+        }
+        return true;
+    }
+    
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+//        Поток контейнера освобождается и пойдёт обслуживать другие запросы
+        QueryCounter.attach(null);
+    }
+    
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        QueryStats stats = QueryCounter.stop();
+        if (stats == null) {
+            return;
+        }
+        if (stats.isOverBudget()) {
+            log.warn(request.getMethod() + " " + request.getRequestURI() + " exceeded query budget of "
+                     + stats.getBudget() + ": " + stats);
+        } else if (log.isDebugEnabled()) {
+            log.debug(request.getMethod() + " " + request.getRequestURI() + ": " + stats);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.alexsem.springcourse.monitoring;
+
+/**
+ * Точка входа для подсчёта SQL в текущем потоке.
+ * Hibernate сообщает сюда о каждом запросе (CountingStatementInspector),
+ * загрузке сущности и коллекции (QueryStatsIntegrator) и времени JDBC (QueryStatsSessionListener).
+ *
+ * Пример подсчёта запросов одного вызова:
+ * <pre>
+ * QueryStats stats = QueryCounter.measure(() -> peopleService.findPage(null, null, null));
+ * </pre>
+ * Проверка числа запросов в тестах - QueryAssertions.assertQueryCount (src/test).
+ */
+public final class QueryCounter {
+    
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+    
+    private QueryCounter() {
+    }
+    
+    public static QueryStats start(int budget, boolean failOnExceed) {
+        QueryStats stats = new QueryStats(budget, failOnExceed);
+        CURRENT.set(stats);
+        return stats;
+    }
+    
+    public static QueryStats stop() {
+        QueryStats stats = CURRENT.get();
+        CURRENT.remove();
+        return stats;
+    }
+    
+    /**
+     * @return счётчики текущего потока или null, если подсчёт не запущен
+     */
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Переносит счётчики в другой поток (например, в поток пула для асинхронной обработки)
+     */
+    public static void attach(QueryStats stats) {
+        if (stats == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(stats);
+        }
+    }
+    
+    public static QueryStats measure(Runnable action) {
+        QueryStats previous = CURRENT.get();
+        QueryStats stats = start(0, false);
+        try {
+            action.run();
+            return stats;
+        } finally {
+            attach(previous);
+        }
+    }
+}
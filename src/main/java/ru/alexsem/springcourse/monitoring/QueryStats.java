@@ -0,0 +1,81 @@
+package ru.alexsem.springcourse.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики SQL одного HTTP-запроса (или одного блока кода, см. QueryCounter).
+ * Один объект может использоваться из нескольких потоков: QueryStatsTaskDecorator передаёт его
+ * в потоки requestExecutor для асинхронных обработчиков, а поток контейнера читает итог,
+ * поэтому счётчики атомарные.
+ */
+public class QueryStats {
+    
+    private final int budget;
+    private final boolean failOnExceed;
+    
+    private final AtomicInteger statements = new AtomicInteger();
+    private final AtomicInteger entityLoads = new AtomicInteger();
+    private final AtomicInteger collectionFetches = new AtomicInteger();
+    private final AtomicLong jdbcNanos = new AtomicLong();
+    
+    /**
+     * @param budget       допустимое число SQL-запросов, 0 - без ограничения
+     * @param failOnExceed бросать QueryBudgetExceededException на запросе, превысившем бюджет
+     */
+    public QueryStats(int budget, boolean failOnExceed) {
+        this.budget = budget;
+        this.failOnExceed = failOnExceed;
+    }
+    
+    void statementPrepared(String sql) {
+        int count = statements.incrementAndGet();
+        if (failOnExceed && budget > 0 && count > budget) {
+            throw new QueryBudgetExceededException(
+                    "Query budget of " + budget + " exceeded by statement: " + sql);
+        }
+    }
+    
+    void entityLoaded() {
+        entityLoads.incrementAndGet();
+    }
+    
+    void collectionFetched() {
+        collectionFetches.incrementAndGet();
+    }
+    
+    void jdbcExecuted(long nanos) {
+        jdbcNanos.addAndGet(nanos);
+    }
+    
+    public boolean isOverBudget() {
+        return budget > 0 && statements.get() > budget;
+    }
+    
+    public int getBudget() {
+        return budget;
+    }
+    
+    public int getStatements() {
+        return statements.get();
+    }
+    
+    public int getEntityLoads() {
+        return entityLoads.get();
+    }
+    
+    public int getCollectionFetches() {
+        return collectionFetches.get();
+    }
+    
+    public double getJdbcMillis() {
+        return jdbcNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d statements, %d entities loaded, %d collections fetched, %.3f ms JDBC",
+                getStatements(), getEntityLoads(), getCollectionFetches(), getJdbcMillis());
+    }
+}
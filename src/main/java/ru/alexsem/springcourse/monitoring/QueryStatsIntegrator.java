@@ -0,0 +1,40 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Добавляет слушатели событий Hibernate: загрузка сущности (в т.ч. из кэша второго уровня)
+ * и инициализация ленивой коллекции. Много инициализаций коллекций в одном запросе - признак N+1.
+ */
+public class QueryStatsIntegrator implements Integrator {
+    
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+        
+        registry.appendListeners(EventType.POST_LOAD, (PostLoadEventListener) event -> {
+            QueryStats stats = QueryCounter.current();
+            if (stats != null) {
+                stats.entityLoaded();
+            }
+        });
+        registry.appendListeners(EventType.INIT_COLLECTION, (InitializeCollectionEventListener) event -> {
+            QueryStats stats = QueryCounter.current();
+            if (stats != null) {
+                stats.collectionFetched();
+            }
+        });
+    }
+    
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
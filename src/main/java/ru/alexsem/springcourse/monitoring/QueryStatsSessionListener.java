@@ -0,0 +1,39 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Время выполнения JDBC-запросов. Hibernate создаёт экземпляр на каждую сессию
+ * (hibernate.session.events.auto), поэтому поле start не разделяется между потоками.
+ */
+public class QueryStatsSessionListener extends BaseSessionEventListener {
+    
+    private long start;
+    
+    @Override
+    public void jdbcExecuteStatementStart() {
+        start = System.nanoTime();
+    }
+    
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record();
+    }
+    
+    @Override
+    public void jdbcExecuteBatchStart() {
+        start = System.nanoTime();
+    }
+    
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record();
+    }
+    
+    private void record() {
+        QueryStats stats = QueryCounter.current();
+        if (stats != null) {
+            stats.jdbcExecuted(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Переносит счётчики SQL (QueryCounter) из потока HTTP-запроса в поток пула,
+ * где выполняется асинхронный обработчик: запросы к БД из пула попадают в статистику
+ * и бюджет того же HTTP-запроса.
+ */
+public class QueryStatsTaskDecorator implements TaskDecorator {
+    
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        QueryStats stats = QueryCounter.current();
+        return () -> {
+            QueryCounter.attach(stats);
+            try {
+                runnable.run();
+            } finally {
+                QueryCounter.attach(null);
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package ru.alexsem.springcourse.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+
+/**
+ * Добавляет замер времени в прокси каждого Spring Data репозитория
+ * (PeopleRepository, ItemsRepository): метрика repository.invocations
+ * с тегами repository, method, exception.
+ */
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+    
+    private final ObjectProvider<MeterRegistry> registry;
+    
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+    
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised) {
+            Advised advised = (Advised) bean;
+            String repository = advised.getProxiedInterfaces()[0].getSimpleName();
+            advised.addAdvice(0, timingInterceptor(repository));
+        }
+        return bean;
+    }
+    
+    private MethodInterceptor timingInterceptor(String repository) {
+        return invocation -> {
+            MeterRegistry meterRegistry = registry.getObject();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String exception = "none";
+            try {
+                return invocation.proceed();
+            } catch (Throwable ex) {
+                exception = ex.getClass().getSimpleName();
+                throw ex;
+            } finally {
+                sample.stop(Timer.builder("repository.invocations")
+                        .tag("repository", repository)
+                        .tag("method", invocation.getMethod().getName())
+                        .tag("exception", exception)
+                        .register(meterRegistry));
+            }
+        };
+    }
+}
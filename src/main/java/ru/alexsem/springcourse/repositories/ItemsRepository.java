@@ -1,11 +1,25 @@
 package ru.alexsem.springcourse.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.alexsem.springcourse.dto.ItemExportRow;
+import ru.alexsem.springcourse.dto.ItemNameCount;
+import ru.alexsem.springcourse.dto.OwnerItemCount;
 import ru.alexsem.springcourse.models.Item;
 import ru.alexsem.springcourse.models.Person;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 /**
  * Репозиторий - для стандартных операций с данными (CRUD, например) -
  * он более высокоуровневый. Работает с сущностями.
@@ -15,8 +29,43 @@ import java.util.List;
 @Repository
 public interface ItemsRepository extends JpaRepository<Item, Integer> {
     //    Создаём кастомные запросы:
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Item> findByItemName(String itemName);
     
     //person.getItems()
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Item> findByOwner(Person owner);
+    
+    //    Вещи одного владельца, keyset пагинация по id (индекс item(person_id, id), миграция V5).
+//    owner.id - это колонка person_id, join с person не нужен
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<Item> findByOwnerIdAndIdGreaterThanOrderByIdAsc(int ownerId, int id, Pageable limit);
+    
+    //    Агрегаты считаются в БД (group by), в Java приходит только по строке на группу.
+//    Результаты в кэше запросов: Hibernate сбрасывает их после коммита любой записи
+//    в item или person, сделанной через сущности (см. ItemsService)
+    
+    //    Количество вещей по владельцам, keyset пагинация по id владельца
+    @Query("select new ru.alexsem.springcourse.dto.OwnerItemCount(o.id, o.name, count(i)) " +
+           "from Item i join i.owner o where o.id > :after group by o.id, o.name order by o.id")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<OwnerItemCount> countItemsByOwner(@Param("after") int after, Pageable limit);
+    
+    //    Владельцы с наибольшим количеством вещей
+    @Query("select new ru.alexsem.springcourse.dto.OwnerItemCount(o.id, o.name, count(i)) " +
+           "from Item i join i.owner o group by o.id, o.name order by count(i) desc, o.id")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<OwnerItemCount> findTopOwners(Pageable limit);
+    
+    //    Самые частые названия вещей (индекс item(item_name), миграция V4)
+    @Query("select new ru.alexsem.springcourse.dto.ItemNameCount(i.itemName, count(i)) " +
+           "from Item i group by i.itemName order by count(i) desc, i.itemName")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<ItemNameCount> countByItemName(Pageable limit);
+    
+    //    Выгрузка всех вещей курсором; owner.id берётся из колонки person_id без join
+    @Query("select i.id as id, i.itemName as itemName, i.owner.id as ownerId from Item i order by i.id")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<ItemExportRow> streamAllForExport();
 }
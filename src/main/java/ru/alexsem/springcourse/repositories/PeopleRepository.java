@@ -1,7 +1,16 @@
 package ru.alexsem.springcourse.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Mood;
 import ru.alexsem.springcourse.models.Person;
 /**
  * Репозиторий - для стандартных операций с данными (CRUD, например) -
@@ -9,7 +18,18 @@ import ru.alexsem.springcourse.models.Person;
  * DAO - для более сложных манипуляций с данными и БД, где нужно
  * вручную писать SQL/HQL, нестандартные запросы.
  */
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * Указываем класс Person и тип id (Integer)
@@ -17,11 +37,96 @@ import java.util.List;
 @Repository
 public interface PeopleRepository extends JpaRepository<Person, Integer> {
     //    Создаём кастомные запросы:
+//    HINT_CACHEABLE - результат запроса кладётся в кэш запросов Hibernate
+//    и сбрасывается автоматически при любой записи в таблицу person
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Person> findByName(String name);
     
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Person> findByNameOrderByAge(String name);
     
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Person> findByEmail(String email);
     
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Person> findByNameStartingWith(String startingWith);
+    
+    //    Keyset (seek) пагинация по id: where p.id > ? order by p.id limit ?
+//    Pageable здесь только ограничивает выборку (PageRequest.of(0, size) -> limit без offset).
+//    Возвращаем List, а не Page - чтобы не было лишнего select count(*).
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<PersonSummary> findByIdGreaterThanOrderByIdAsc(int id, Pageable limit);
+    
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<PersonSummary> findByIdLessThanOrderByIdDesc(int id, Pageable limit);
+    
+    //    Люди вместе с вещами одним запросом: граф Person.items (left join fetch p.items).
+//    Лимит сюда не передаём: с join fetch Hibernate применил бы его в памяти ко всей выборке,
+//    поэтому страница сначала выбирается по id (findByIdGreaterThan...), а потом догружается здесь.
+//    distinct убирает повторы Person из результата, а passDistinctThrough=false - из SQL
+    @EntityGraph("Person.items")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Person> findDistinctByIdInOrderByIdAsc(Collection<Integer> ids);
+    
+    //    Страница человека: только нужные колонки, объект создаётся конструктором PersonDetails
+    @Query("select new ru.alexsem.springcourse.dto.PersonDetails(p.id, p.name, p.age, p.email, p.version) " +
+           "from Person p where p.id = :id")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    Optional<PersonDetails> findDetailsById(@Param("id") int id);
+    
+    //    Поиск для GET /people/search. Выражения lower(...) совпадают с индексами
+//    из миграции V3__person_search_indexes.sql: по началу строки (text_pattern_ops)
+//    и по подстроке (pg_trgm). Спецсимволы LIKE в pattern экранируются через '\'.
+//    UNION вместо "name like ... or email like ...": с OR и order by id limit PostgreSQL,
+//    ожидая много совпадений, идёт по первичному ключу с фильтром и не использует индексы
+//    (SQL/benchmarks/person_search_plans.sql). У каждой половины свой limit - union
+//    не собирает все совпадения, если их миллион
+    @Query(value = "select id, name, age, version from (" +
+                   "(select id, name, age, version from Person where lower(name) like :pattern escape '\\' " +
+                   "order by id limit :limit) union " +
+                   "(select id, name, age, version from Person where lower(email) like :pattern escape '\\' " +
+                   "order by id limit :limit)) p order by id limit :limit",
+           nativeQuery = true)
+    List<PersonSummary> search(@Param("pattern") String pattern, @Param("limit") int limit);
+    
+    //    Массовое удаление одним DELETE/UPDATE на набор строк, без загрузки сущностей.
+//    Сначала отвязываем вещи (в БД это сделал бы и ON DELETE SET NULL, но тогда Hibernate
+//    не узнал бы об изменении item): после bulk-запроса Hibernate сам сбрасывает регионы
+//    кэша второго уровня затронутых таблиц (item, person.items, person) и кэш запросов.
+//    versioned - вещам увеличивается version, как при изменении через сущность.
+//    flushAutomatically - несохранённые изменения уходят в БД до запроса,
+//    clearAutomatically - persistence context очищается: в нём не остаются удалённые Person
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update versioned Item i set i.owner = null where i.owner.id in :ids")
+    int detachItemsByOwnerIds(@Param("ids") Collection<Integer> ids);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Person p where p.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update versioned Item i set i.owner = null where i.owner in " +
+           "(select p from Person p where p.createdAt < :createdBefore)")
+    int detachItemsOfPeopleCreatedBefore(@Param("createdBefore") Date createdBefore);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Person p where p.createdAt < :createdBefore")
+    int deletePeopleCreatedBefore(@Param("createdBefore") Date createdBefore);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update versioned Item i set i.owner = null where i.owner in (select p from Person p where p.mood = :mood)")
+    int detachItemsOfPeopleWithMood(@Param("mood") Mood mood);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Person p where p.mood = :mood")
+    int deletePeopleWithMood(@Param("mood") Mood mood);
+    
+    //    Потоковое чтение всей таблицы через серверный курсор PostgreSQL (fetch size).
+//    Сущности read-only (без снимков для dirty checking) и не попадают в кэш второго уровня.
+//    Вызывать только внутри транзакции и закрывать Stream.
+    @Query("select p from Person p order by p.id")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    Stream<Person> streamAllByOrderById();
 }
@@ -0,0 +1,40 @@
+package ru.alexsem.springcourse.services;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Человек с таким email уже есть: INSERT или UPDATE нарушил уникальный индекс person_email_key.
+ * Уникальность проверяет только БД - проверка через SELECT перед INSERT не спасает
+ * от двух одновременных запросов с одним email.
+ */
+public class DuplicateEmailException extends DataIntegrityViolationException {
+    
+    private static final String CONSTRAINT = "person_email_key";
+    
+    private final String email;
+    
+    public DuplicateEmailException(String email, Throwable cause) {
+        super("Person with email " + email + " already exists", cause);
+        this.email = email;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    /**
+     * Это нарушение именно уникальности email, а не другого ограничения (например, CHECK на age)?
+     * Имя ограничения Hibernate достаёт из сообщения драйвера (PostgreSQL - "person_email_key",
+     * H2 - "PUBLIC.PERSON_EMAIL_KEY_INDEX_8 ON ...")
+     */
+    public static boolean isDuplicateEmail(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraint = ((ConstraintViolationException) cause).getConstraintName();
+                return constraint != null && constraint.toLowerCase().contains(CONSTRAINT);
+            }
+        }
+        return false;
+    }
+}
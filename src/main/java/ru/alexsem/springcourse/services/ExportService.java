@@ -0,0 +1,75 @@
+package ru.alexsem.springcourse.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.alexsem.springcourse.dto.ItemExportRow;
+import ru.alexsem.springcourse.io.ExportFormat;
+import ru.alexsem.springcourse.io.ExportWriter;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.ItemsRepository;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка всей таблицы без загрузки её в память:
+ * строки читаются курсором (fetch size) и сразу пишутся в ответ.
+ * Persistence context периодически очищается, поэтому расход памяти
+ * не зависит от количества строк.
+ */
+@Service
+@Transactional(readOnly = true)
+public class ExportService {
+    
+    private static final int CLEAR_EVERY = 1000;
+    
+    private final PeopleRepository peopleRepository;
+    private final ItemsRepository itemsRepository;
+    private final EntityManager entityManager;
+    
+    @Autowired
+    public ExportService(PeopleRepository peopleRepository, ItemsRepository itemsRepository,
+                         EntityManager entityManager) {
+        this.peopleRepository = peopleRepository;
+        this.itemsRepository = itemsRepository;
+        this.entityManager = entityManager;
+    }
+    
+    public void exportPeople(ExportFormat format, Writer writer) throws IOException {
+        ExportWriter exportWriter = format.newWriter(writer,
+                "id", "name", "age", "email", "date_of_birth", "created_at", "mood");
+        try (Stream<Person> people = peopleRepository.streamAllByOrderById()) {
+            Iterator<Person> iterator = people.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                Person person = iterator.next();
+                exportWriter.writeRow(person.getId(), person.getName(), person.getAge(), person.getEmail(),
+                        person.getDateOfBirth(), person.getCreatedAt(), person.getMood());
+                if (++count % CLEAR_EVERY == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        exportWriter.flush();
+    }
+    
+    public void exportItems(ExportFormat format, Writer writer) throws IOException {
+        ExportWriter exportWriter = format.newWriter(writer, "id", "item_name", "person_id");
+        try (Stream<ItemExportRow> items = itemsRepository.streamAllForExport()) {
+            items.forEach(item -> {
+                try {
+                    exportWriter.writeRow(item.getId(), item.getItemName(), item.getOwnerId());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        exportWriter.flush();
+    }
+}
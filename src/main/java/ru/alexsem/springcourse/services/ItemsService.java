@@ -1,13 +1,27 @@
 package ru.alexsem.springcourse.services;
 
+import org.hibernate.Cache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.alexsem.springcourse.dto.ItemNameCount;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.OwnerItemCount;
 import ru.alexsem.springcourse.models.Item;
 import ru.alexsem.springcourse.models.Person;
 import ru.alexsem.springcourse.repositories.ItemsRepository;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
 
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 /**
  * Любая работа с данными осуществляется в сервисном слое.
@@ -20,10 +34,26 @@ import java.util.List;
 @Transactional(readOnly = true)
 public class ItemsService {
     
+    private static final String PERSON_ITEMS = Person.class.getName() + ".items";
+    
     private final ItemsRepository itemsRepository;
+    private final PeopleRepository peopleRepository;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final Cache cache;
+//    Размер страницы вещей (items.page_size) и верхняя граница для параметра ?size=
+    private final int defaultPageSize;
+    private final int maxPageSize;
     @Autowired
-    public ItemsService(ItemsRepository itemsRepository) {
+    public ItemsService(ItemsRepository itemsRepository, PeopleRepository peopleRepository,
+                        OptimisticLockRetry optimisticLockRetry, EntityManagerFactory entityManagerFactory,
+                        @Value("${items.page_size:50}") int defaultPageSize,
+                        @Value("${items.page_size.max:200}") int maxPageSize) {
         this.itemsRepository = itemsRepository;
+        this.peopleRepository = peopleRepository;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
     
     public List<Item> findByItemName(String itemName) {
@@ -34,5 +64,147 @@ public class ItemsService {
         return itemsRepository.findByOwner(owner);
     }
     
+    /**
+     * Вещи владельца постранично (keyset по id) - у владельца их может быть сколько угодно,
+     * поэтому Person.items целиком здесь не загружается
+     * @param ownerId
+     * @param after id последней вещи предыдущей страницы, null - первая страница
+     * @param size  размер страницы, null - размер по умолчанию
+     * @return
+     */
+    public KeysetPage<Item> findOwnerItems(int ownerId, Integer after, Integer size) {
+        int pageSize = pageSize(size);
+        List<Item> rows = itemsRepository.findByOwnerIdAndIdGreaterThanOrderByIdAsc(ownerId,
+                after == null ? Integer.MIN_VALUE : after, PageRequest.of(0, pageSize + 1));
+        return nextPage(rows, pageSize, Item::getId);
+    }
+    
+    /**
+     * Количество вещей по владельцам (group by в БД), keyset пагинация по id владельца.
+     * Люди без вещей в список не попадают
+     * @param after id последнего владельца предыдущей страницы, null - первая страница
+     * @param size  размер страницы, null - размер по умолчанию
+     * @return
+     */
+    public KeysetPage<OwnerItemCount> countItemsByOwner(Integer after, Integer size) {
+        int pageSize = pageSize(size);
+        List<OwnerItemCount> rows = itemsRepository.countItemsByOwner(
+                after == null ? Integer.MIN_VALUE : after, PageRequest.of(0, pageSize + 1));
+        return nextPage(rows, pageSize, OwnerItemCount::getOwnerId);
+    }
+    
+    /**
+     * @param limit сколько владельцев вернуть, null - размер страницы по умолчанию
+     * @return владельцы с наибольшим количеством вещей
+     */
+    public List<OwnerItemCount> findTopOwners(Integer limit) {
+        return itemsRepository.findTopOwners(PageRequest.of(0, pageSize(limit)));
+    }
+    
+    /**
+     * @param limit сколько названий вернуть, null - размер страницы по умолчанию
+     * @return самые частые названия вещей и их количество
+     */
+    public List<ItemNameCount> countByItemName(Integer limit) {
+        return itemsRepository.countByItemName(PageRequest.of(0, pageSize(limit)));
+    }
+    
+    /**
+     * Добавляем вещь владельцу.
+     * Вещь добавляется и в owner.items: Hibernate не загружает коллекцию ради add
+     * (это обратная сторона связи), но сбрасывает её в кэше второго уровня ("person.items").
+     * Агрегаты из кэша запросов сбрасываются сами - изменилась таблица item
+     * @param ownerId
+     * @param itemName
+     * @return
+     * @throws EntityNotFoundException если человека нет
+     */
+    @Transactional
+    public Item add(int ownerId, String itemName) {
+        Person owner = peopleRepository.findById(ownerId)
+                .orElseThrow(() -> new EntityNotFoundException("Person " + ownerId + " not found"));
+        Item item = new Item(itemName, owner);
+        owner.getItems().add(item);
+        return itemsRepository.save(item);
+    }
     
+    /**
+     * Удаляем вещь. В отличие от add, owner.items не трогаем: remove загрузил бы всю коллекцию
+     * владельца ради одной вещи. Коллекция владельца сбрасывается в кэше второго уровня после коммита.
+     * Если вещь одновременно изменили или удалили (конфликт версий) - повторяем (OptimisticLockRetry):
+     * удаление идемпотентно, при повторе вещи уже может не быть
+     * @param id
+     * @return удалённая вещь или null, если её нет
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Item delete(int id) {
+        return optimisticLockRetry.execute(status -> {
+            Item item = itemsRepository.findById(id).orElse(null);
+            if (item == null) {
+                return null;
+            }
+            if (item.getOwner() != null) {
+                evictItemsAfterCommit(item.getOwner().getId());
+            }
+            itemsRepository.delete(item);
+            return item;
+        });
+    }
+    
+    /**
+     * Передаём вещь другому владельцу. Идемпотентно (результат - "владелец вещи ownerId"),
+     * поэтому при конфликте версий операция повторяется на свежих данных (OptimisticLockRetry)
+     * @param id
+     * @param ownerId
+     * @return вещь с новым владельцем
+     * @throws EntityNotFoundException если нет вещи или человека
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Item move(int id, int ownerId) {
+        return optimisticLockRetry.execute(status -> {
+            Item item = itemsRepository.findById(id)
+                    .orElseThrow(() -> new EntityNotFoundException("Item " + id + " not found"));
+            if (item.getOwner() != null && item.getOwner().getId() == ownerId) {
+                return item;
+            }
+            Person owner = peopleRepository.findById(ownerId)
+                    .orElseThrow(() -> new EntityNotFoundException("Person " + ownerId + " not found"));
+//            Как в delete: коллекции не загружаем, а сбрасываем в кэше второго уровня у обоих владельцев
+            if (item.getOwner() != null) {
+                evictItemsAfterCommit(item.getOwner().getId());
+            }
+            evictItemsAfterCommit(ownerId);
+            item.setOwner(owner);
+            return item;
+        });
+    }
+    
+    /**
+     * owner.items в кэше второго уровня хранит id вещей. После коммита запись сбрасывается,
+     * и следующее чтение загрузит коллекцию из БД. Если сбросить её раньше, параллельное чтение
+     * могло бы положить в кэш состояние до коммита
+     */
+    private void evictItemsAfterCommit(int ownerId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.evictCollectionData(PERSON_ITEMS, ownerId);
+            }
+        });
+    }
+    
+    private int pageSize(Integer size) {
+        return size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+    }
+    
+    //    Запрашиваем на одну строку больше страницы: так без count(*) узнаём, есть ли что-то дальше
+    private static <T> KeysetPage<T> nextPage(List<T> rows, int pageSize, ToIntFunction<T> id) {
+        List<T> content = new ArrayList<>(rows);
+        boolean hasNext = content.size() > pageSize;
+        if (hasNext) {
+            content.remove(pageSize);
+        }
+        return new KeysetPage<>(content, pageSize,
+                hasNext ? id.applyAsInt(content.get(content.size() - 1)) : null, null);
+    }
 }
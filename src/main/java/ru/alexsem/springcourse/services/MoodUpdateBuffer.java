@@ -0,0 +1,176 @@
+package ru.alexsem.springcourse.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import ru.alexsem.springcourse.dao.PersonMoodDAO;
+import ru.alexsem.springcourse.models.Mood;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Отложенная запись настроения (write-behind): PATCH /people/{id}/mood только кладёт
+ * новое значение в память, в БД оно попадает пачкой (PersonMoodDAO) из отдельного потока.
+ *
+ * Повторные изменения одного человека до записи схлопываются - пишется последнее значение.
+ * Запись - раз в mood.buffer.flush_interval_ms или сразу, как накопится mood.buffer.batch_size людей.
+ * В буфере не больше mood.buffer.capacity людей (граница приблизительная при одновременных запросах):
+ * если БД не успевает, новые изменения отклоняются (TaskRejectedException - 503).
+ *
+ * При остановке приложения буфер дописывается в БД (close). При падении процесса
+ * теряются изменения за последний интервал записи. Если это недопустимо -
+ * mood.buffer.write_through=true: каждое изменение пишется сразу, в потоке запроса.
+ *
+ * Пачку пишет поток flusher, у которого нет клиента (ReadYourWrites): запись настроения
+ * никого не закрепляет за primary. Клиент и так не ждёт увидеть настроение сразу (ответ 202),
+ * а при write_through запись идёт в потоке запроса и закрепляет его чтение как обычно.
+ *
+ * Метрики: mood.buffer.size (людей в буфере), mood.buffer.flush (время записи пачки),
+ * mood.buffer.coalesced (изменений, перезаписанных до записи), mood.buffer.rejected.
+ */
+@Component
+public class MoodUpdateBuffer implements Closeable {
+    
+    private static final Log log = LogFactory.getLog(MoodUpdateBuffer.class);
+    
+    private final PersonMoodDAO personMoodDAO;
+    private final int capacity;
+    private final int batchSize;
+    private final boolean writeThrough;
+    
+    private final ConcurrentHashMap<Integer, Mood> pending = new ConcurrentHashMap<>();
+//    Запись по размеру уже поставлена в очередь потока flusher - не ставим ещё одну
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    
+    private final Timer flushTimer;
+    private final Counter coalesced;
+    private final Counter rejected;
+    
+    @Autowired
+    public MoodUpdateBuffer(PersonMoodDAO personMoodDAO,
+                            @Value("${mood.buffer.capacity:10000}") int capacity,
+                            @Value("${mood.buffer.batch_size:500}") int batchSize,
+                            @Value("${mood.buffer.flush_interval_ms:1000}") long flushIntervalMs,
+                            @Value("${mood.buffer.write_through:false}") boolean writeThrough,
+                            MeterRegistry registry) {
+        this.personMoodDAO = personMoodDAO;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.writeThrough = writeThrough;
+        
+        Gauge.builder("mood.buffer.size", pending, Map::size).register(registry);
+        this.flushTimer = Timer.builder("mood.buffer.flush").register(registry);
+        this.coalesced = Counter.builder("mood.buffer.coalesced").register(registry);
+        this.rejected = Counter.builder("mood.buffer.rejected").register(registry);
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mood-buffer-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!writeThrough) {
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Запомнить новое настроение человека. Если человека нет, запись в БД ничего не изменит
+     *
+     * @throws TaskRejectedException если буфер заполнен
+     */
+    public void offer(int id, Mood mood) {
+        if (writeThrough) {
+            personMoodDAO.updateMoods(Map.of(id, mood));
+            return;
+        }
+        if (pending.size() >= capacity && !pending.containsKey(id)) {
+            rejected.increment();
+            throw new TaskRejectedException("Mood buffer is full (" + capacity + ")");
+        }
+        if (pending.put(id, mood) != null) {
+            coalesced.increment();
+        }
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+    
+    /**
+     * Записать всё, что накопилось, пачками по batchSize.
+     * Вызывается из потока flusher и при остановке (после остановки flusher) - одновременно не выполняется
+     *
+     * @return количество записанных людей
+     */
+    int flush() {
+        flushRequested.set(false);
+        int written = 0;
+        Map<Integer, Mood> batch = new HashMap<>();
+        for (Iterator<Integer> ids = pending.keySet().iterator(); ids.hasNext(); ) {
+            Integer id = ids.next();
+//            remove, а не iterator.remove: значение, положенное после чтения, не должно потеряться
+            Mood mood = pending.remove(id);
+            if (mood == null) {
+                continue;
+            }
+            batch.put(id, mood);
+            if (batch.size() == batchSize) {
+                written += write(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            written += write(batch);
+        }
+        return written;
+    }
+    
+    private int write(Map<Integer, Mood> batch) {
+        try {
+            flushTimer.record(() -> personMoodDAO.updateMoods(batch));
+            return batch.size();
+        } catch (RuntimeException e) {
+//            Возвращаем в буфер, если за это время не пришло более новое значение
+            batch.forEach(pending::putIfAbsent);
+            throw e;
+        }
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Mood buffer flush failed, " + pending.size() + " updates will be retried", e);
+        }
+    }
+    
+    //    Spring вызывает close() при закрытии контекста - до закрытия EntityManagerFactory и пула соединений
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int written = flush();
+        if (written > 0) {
+            log.info("Mood buffer flushed " + written + " updates on shutdown");
+        }
+    }
+}
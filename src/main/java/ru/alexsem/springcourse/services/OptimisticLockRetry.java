@@ -0,0 +1,84 @@
+package ru.alexsem.springcourse.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Повтор транзакции при конфликте версий (оптимистическая блокировка, @Version).
+ *
+ * Только для идемпотентных операций, которые сами перечитывают данные (например, "удалить вещь",
+ * "сделать владельцем X"): повтор применяет то же намерение к свежей версии строки.
+ * Изменения из формы (PeopleService.update с версией из скрытого поля) не повторяются -
+ * там конфликт показывается пользователю.
+ *
+ * Не больше retry.optimistic.max_attempts попыток. Пауза перед повтором растёт вдвое
+ * (от retry.optimistic.backoff_ms, но не больше retry.optimistic.max_backoff_ms) и выбирается случайно
+ * в этих пределах - чтобы конкурирующие запросы не повторялись одновременно.
+ * Метрика optimistic_lock.retries - сколько было повторов.
+ */
+@Component
+public class OptimisticLockRetry {
+    
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final Counter retries;
+    
+    @Autowired
+    public OptimisticLockRetry(PlatformTransactionManager transactionManager,
+                               @Value("${retry.optimistic.max_attempts:5}") int maxAttempts,
+                               @Value("${retry.optimistic.backoff_ms:10}") long backoffMs,
+                               @Value("${retry.optimistic.max_backoff_ms:200}") long maxBackoffMs,
+                               MeterRegistry registry) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.retries = Counter.builder("optimistic_lock.retries").register(registry);
+    }
+    
+    /**
+     * Выполнить action в новой транзакции, при конфликте версий - повторить
+     *
+     * @throws OptimisticLockingFailureException если конфликт остался после всех попыток
+     * @throws IllegalStateException если уже есть транзакция: она после конфликта откатится целиком,
+     *                               повторять внутри неё бесполезно
+     */
+    public <T> T execute(TransactionCallback<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Optimistic lock retry must start its own transaction");
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(action);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+    
+    private void backoff(int attempt) {
+        long bound = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
@@ -1,16 +1,39 @@
 package ru.alexsem.springcourse.services;
 
+import org.hibernate.Cache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.BindException;
+import org.springframework.validation.Validator;
+import ru.alexsem.springcourse.cache.PeoplePageCache;
+import ru.alexsem.springcourse.dao.PersonImportDAO;
+import ru.alexsem.springcourse.dao.PersonUpsertDAO;
 import ru.alexsem.springcourse.dao.ProblemNPlus1DAO;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonPatch;
+import ru.alexsem.springcourse.dto.PersonSummary;
 import ru.alexsem.springcourse.models.Mood;
 import ru.alexsem.springcourse.models.Person;
 import ru.alexsem.springcourse.repositories.PeopleRepository;
 
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Любая работа с данными осуществляется в сервисном слое.
@@ -27,49 +50,373 @@ import java.util.Optional;
 @Transactional(readOnly = true)
 public class PeopleService {
     
+//    Не больше стольких id в одном IN (...): у PostgreSQL ограничение на число параметров запроса
+    private static final int BULK_CHUNK = 1000;
+    private static final String PERSON_ITEMS = Person.class.getName() + ".items";
+    
     private final PeopleRepository peopleRepository;
     private final ProblemNPlus1DAO problemNPlus1DAO;
+    private final PersonImportDAO personImportDAO;
+    private final PersonUpsertDAO personUpsertDAO;
+    private final PeoplePageCache pageCache;
+    private final OptimisticLockRetry optimisticLockRetry;
+    private final Cache cache;
+//    Демонстрация N+1 (join fetch по всей таблице) включается только явно:
+//    diagnostics.n_plus_1=true в hibernate.properties
+    private final boolean nPlus1Diagnostics;
+//    Размер страницы списка людей (people.page_size) и верхняя граница для параметра ?size=
+    private final int defaultPageSize;
+    private final int maxPageSize;
     
     @Autowired
-    public PeopleService(PeopleRepository peopleRepository, ProblemNPlus1DAO problemNPlus1DAO) {
+    public PeopleService(PeopleRepository peopleRepository, ProblemNPlus1DAO problemNPlus1DAO,
+                         PersonImportDAO personImportDAO, PersonUpsertDAO personUpsertDAO,
+                         PeoplePageCache pageCache, OptimisticLockRetry optimisticLockRetry,
+                         EntityManagerFactory entityManagerFactory,
+                         @Value("${diagnostics.n_plus_1:false}") boolean nPlus1Diagnostics,
+                         @Value("${people.page_size:20}") int defaultPageSize,
+                         @Value("${people.page_size.max:200}") int maxPageSize) {
         this.peopleRepository = peopleRepository;
         this.problemNPlus1DAO = problemNPlus1DAO;
+        this.personImportDAO = personImportDAO;
+        this.personUpsertDAO = personUpsertDAO;
+        this.pageCache = pageCache;
+        this.optimisticLockRetry = optimisticLockRetry;
+        this.cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        this.nPlus1Diagnostics = nPlus1Diagnostics;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
     
     public List<Person> findAll() {
-        problemNPlus1DAO.testNPlus1();
+        if (nPlus1Diagnostics) {
+            problemNPlus1DAO.testNPlus1();
+        }
         return peopleRepository.findAll();
     }
     
+    /**
+     * Страница списка людей (keyset пагинация по id).
+     * Запрашиваем на одну запись больше размера страницы - так без count(*)
+     * узнаём, есть ли записи дальше. Есть ли записи перед страницей после after,
+     * проверяем отдельным запросом с limit 1 (previousCursor).
+     * Курсоры на границах int не переполняются: before - 1 и after + 1 ограничены.
+     *
+     * @param after  id последней записи предыдущей страницы (листаем вперёд)
+     * @param before id первой записи следующей страницы (листаем назад)
+     * @param size   размер страницы, null - размер по умолчанию
+     * @return
+     */
+    public KeysetPage<PersonSummary> findPage(Integer after, Integer before, Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        
+        if (before != null) {
+            List<PersonSummary> rows = new ArrayList<>(peopleRepository.findByIdLessThanOrderByIdDesc(before, limit));
+            boolean hasPrevious = rows.size() > pageSize;
+            if (hasPrevious) {
+                rows.remove(pageSize);
+            }
+            Collections.reverse(rows);
+            if (rows.isEmpty()) {
+                return new KeysetPage<>(rows, pageSize, before == Integer.MIN_VALUE ? before : before - 1, null);
+            }
+            return new KeysetPage<>(rows, pageSize, rows.get(rows.size() - 1).getId(),
+                    hasPrevious ? rows.get(0).getId() : null);
+        }
+        
+        int from = after == null ? Integer.MIN_VALUE : after;
+        List<PersonSummary> rows = new ArrayList<>(peopleRepository.findByIdGreaterThanOrderByIdAsc(from, limit));
+        boolean hasNext = rows.size() > pageSize;
+        if (hasNext) {
+            rows.remove(pageSize);
+        }
+        Integer nextCursor = hasNext ? rows.get(rows.size() - 1).getId() : null;
+        if (after == null) {
+            return new KeysetPage<>(rows, pageSize, nextCursor, null);
+        }
+        int first = rows.isEmpty() ? (after == Integer.MAX_VALUE ? after : after + 1) : rows.get(0).getId();
+        return new KeysetPage<>(rows, pageSize, nextCursor, previousCursor(first));
+    }
+    
+//    Курсор назад для страницы, которая начинается с id first, - только если есть id меньше
+    private Integer previousCursor(int first) {
+        boolean hasPrevious = !peopleRepository.findByIdLessThanOrderByIdDesc(first, PageRequest.of(0, 1)).isEmpty();
+        return hasPrevious ? first : null;
+    }
+    
+    /**
+     * Страница людей вместе с их вещами - 2 запроса, независимо от размера страницы:
+     * id страницы (keyset, как в findPage) и люди с вещами по этим id (граф Person.items).
+     * Для страницы после after - ещё проверка, есть ли люди до неё (см. findPage).
+     * @param after
+     * @param before
+     * @param size
+     * @return
+     */
+    public KeysetPage<Person> findPageWithItems(Integer after, Integer before, Integer size) {
+        KeysetPage<PersonSummary> ids = findPage(after, before, size);
+        List<Person> people = ids.getContent().isEmpty()
+                ? Collections.emptyList()
+                : peopleRepository.findDistinctByIdInOrderByIdAsc(
+                        ids.getContent().stream().map(PersonSummary::getId).collect(Collectors.toList()));
+        return new KeysetPage<>(people, ids.getSize(), ids.getNextCursor(), ids.getPreviousCursor());
+    }
+    
+    /**
+     * Поиск по имени и email без учёта регистра.
+     * Короткий запрос (1-2 символа) ищется по началу строки - триграммный индекс
+     * для него бесполезен, длинный - по подстроке.
+     * @param query
+     * @param size максимальное количество результатов, null - размер страницы по умолчанию
+     * @return
+     */
+    public List<PersonSummary> search(String query, Integer size) {
+        String escaped = query.trim().toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        if (escaped.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String pattern = query.trim().length() < 3 ? escaped + "%" : "%" + escaped + "%";
+        int limit = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        return peopleRepository.search(pattern, limit);
+    }
+    
     public Person findOne(int id) {
         Optional<Person> foundPerson = peopleRepository.findById(id);
         return foundPerson.orElse(null);
     }
     
+    /**
+     * Только то, что показывает people/show.html. Проекция не попадает в persistence context:
+     * ни снимка для dirty checking, ни прокси для items.
+     * Для формы редактирования (нужна версия и связывание с Person) - findOne
+     * @param id
+     * @return null, если человека нет
+     */
+    public PersonDetails findDetails(int id) {
+        return peopleRepository.findDetailsById(id).orElse(null);
+    }
+    
+    /**
+     * То же, что findDetails, но прочитанное тем же путём, что и update: сущность в пишущей
+     * транзакции, то есть на primary и мимо кэша запросов. Для ответа на конфликт версий -
+     * findDetails мог бы уйти на отстающую реплику и показать версию, которая снова не сохранится
+     * @param id
+     * @return null, если человека нет
+     */
+    @Transactional
+    public PersonDetails findCurrent(int id) {
+        return peopleRepository.findById(id)
+                .map(person -> new PersonDetails(person.getId(), person.getName(), person.getAge(),
+                        person.getEmail(), person.getVersion()))
+                .orElse(null);
+    }
+    
+    /**
+     * Уникальность email проверяет БД (индекс person_email_key), без SELECT перед INSERT.
+     * flush - чтобы INSERT выполнился здесь, а не при коммите, и нарушение индекса
+     * пришло как DuplicateEmailException
+     * @param person
+     * @throws DuplicateEmailException если человек с таким email уже есть
+     */
     @Transactional
     public void save(Person person) {
         person.setCreatedAt(new Date());
         person.setMood(Mood.CALM);
-        peopleRepository.save(person);
+        try {
+            peopleRepository.saveAndFlush(person);
+        } catch (DataIntegrityViolationException e) {
+            throw translate(e, person.getEmail());
+        }
+//        Новый человек появится на последней странице списка
+        pageCache.evict(person.getId());
+    }
+    
+    /**
+     * Создать человека с таким email или обновить name и age существующего - одним запросом
+     * (INSERT ... ON CONFLICT, см. PersonUpsertDAO). Одновременные вызовы с одним email не создают дубликатов
+     * @param person
+     * @return id созданного или обновлённого человека
+     */
+    @Transactional
+    public int upsertByEmail(Person person) {
+        int id = personUpsertDAO.upsertByEmail(person);
+        pageCache.evict(id);
+        return id;
+    }
+    
+    /**
+     * Массовый импорт в одной транзакции: INSERT-ы идут JDBC batch-ами (см. PersonImportDAO).
+     * Записи проверяет читатель (PersonCsvReader, PersonJsonReader): если хотя бы одна не проходит
+     * валидацию или нарушает ограничение БД (например, email уже есть), откатывается весь импорт.
+     * @param people
+     * @return количество импортированных людей
+     * @throws ImportFormatException если запись не разбирается или не проходит валидацию
+     * @throws DataIntegrityViolationException если запись нарушает ограничение БД
+     */
+    @Transactional
+    public int importPeople(Iterator<Person> people) {
+        Date createdAt = new Date();
+        pageCache.evictAll();
+        return personImportDAO.persistAll(people, person -> {
+            person.setCreatedAt(createdAt);
+            person.setMood(Mood.CALM);
+        });
     }
     
     /**
-     * В репозитории есть соглашение, что для добавления
-     * и обновления сущности используется один и тот же метод save(person)
+     * Обновляем только поля формы (name, age, email): createdAt, mood и dateOfBirth не затираются null-ами из формы.
+     * Сущность обычно берётся из кэша второго уровня (без SELECT), при flush уходит один UPDATE
+     * изменённых колонок (@DynamicUpdate) с условием по version. В кэше меняется только эта запись -
+     * bulk UPDATE (JPQL) сбросил бы весь регион person и кэш запросов по таблице.
+     * Версия приходит из формы (скрытое поле): если она не совпадает с текущей
+     * или запись успели изменить между чтением и UPDATE - конфликт.
      * @param id
      * @param updatedPerson
+     * @return новая версия (прежняя, если поля не изменились и UPDATE не понадобился)
+     * @throws ObjectOptimisticLockingFailureException если версия устарела или человека нет
+     * @throws DuplicateEmailException если email занят другим человеком
      */
-    
     @Transactional
-    public void update(int id, Person updatedPerson) {
-        updatedPerson.setId(id);
-//        Обновит значения у существующего человека (по id найдёт его):
-        peopleRepository.save(updatedPerson);
+    public int update(int id, Person updatedPerson) {
+        Person person = peopleRepository.findById(id)
+                .orElseThrow(() -> new ObjectOptimisticLockingFailureException(Person.class, id));
+        apply(person, updatedPerson);
+        return person.getVersion();
     }
     
+    /**
+     * PATCH: чтение, слияние с patch и UPDATE - в одной пишущей транзакции, то есть на primary.
+     * Чтение до транзакции (findDetails) могло уйти на реплику или в кэш запросов и вернуть старые
+     * значения полей, которых нет в patch, - UPDATE записал бы их обратно.
+     * Версия клиента сравнивается с только что прочитанной, дальше - как update
+     * @param id
+     * @param version версия, которую видел клиент
+     * @param patch изменяемые поля, null - оставить как есть
+     * @param validator проверка итогового состояния
+     * @return человек после изменения (с новой версией)
+     * @throws EntityNotFoundException если человека нет
+     * @throws ObjectOptimisticLockingFailureException если версия устарела
+     * @throws BindException если итоговое состояние не прошло проверку (ничего не изменено)
+     * @throws DuplicateEmailException если email занят другим человеком
+     */
     @Transactional
+    public Person patch(int id, int version, PersonPatch patch, Validator validator) throws BindException {
+        Person person = peopleRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Person " + id + " not found"));
+        Person merged = new Person(patch.getName() != null ? patch.getName() : person.getName(),
+                patch.getAge() != null ? patch.getAge() : person.getAge());
+        merged.setEmail(patch.getEmail() != null ? patch.getEmail() : person.getEmail());
+        merged.setVersion(version);
+        BindException errors = new BindException(merged, "person");
+        validator.validate(merged, errors);
+        if (errors.hasErrors()) {
+            throw errors;
+        }
+        apply(person, merged);
+        return person;
+    }
+    
+//    Общая часть update и patch: сущность уже прочитана в этой транзакции
+    private void apply(Person person, Person updatedPerson) {
+        if (person.getVersion() != updatedPerson.getVersion()) {
+            throw new ObjectOptimisticLockingFailureException(Person.class, person.getId());
+        }
+        person.setName(updatedPerson.getName());
+        person.setAge(updatedPerson.getAge());
+        person.setEmail(updatedPerson.getEmail());
+        try {
+            peopleRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw translate(e, updatedPerson.getEmail());
+        }
+        pageCache.evict(person.getId());
+    }
+    
+    /**
+     * Удаление одного человека - через сущности, а не bulk-запросами, как в deleteAll:
+     * bulk-запрос сбрасывает целиком регионы person, item и person.items кэша второго уровня
+     * ради одной записи. Здесь Hibernate убирает из кэша только этого человека и его коллекцию вещей,
+     * а у его вещей (обычно они и так в кэше) меняет владельца на null.
+     * Удаление идемпотентно, поэтому при конфликте версий (человека или вещь как раз изменили)
+     * повторяется (OptimisticLockRetry)
+     * @param id
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void delete(int id) {
-        peopleRepository.deleteById(id);
+        optimisticLockRetry.execute(status -> {
+            peopleRepository.findById(id).ifPresent(person -> {
+                person.getItems().forEach(item -> item.setOwner(null));
+                peopleRepository.delete(person);
+                pageCache.evict(id);
+            });
+            return null;
+        });
+    }
+    
+    /**
+     * Массовое удаление по списку id: на каждые BULK_CHUNK id - один UPDATE item
+     * и один DELETE person, сущности не загружаются.
+     * Persistence context сбрасывается в PeopleRepository (clearAutomatically), а регионы
+     * кэша второго уровня Hibernate очищает только после коммита - до него эта же транзакция
+     * прочитала бы удалённых людей из кэша, поэтому их записи убираются сразу
+     * @param ids
+     * @return количество удалённых людей
+     */
+    @Transactional
+    public int deleteAll(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        int deleted = 0;
+        for (int from = 0; from < idList.size(); from += BULK_CHUNK) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + BULK_CHUNK, idList.size()));
+            peopleRepository.detachItemsByOwnerIds(chunk);
+            deleted += peopleRepository.deleteByIds(chunk);
+            chunk.forEach(id -> {
+                cache.evictEntityData(Person.class, id);
+                cache.evictCollectionData(PERSON_ITEMS, id);
+            });
+        }
+        if (deleted > 0) {
+            pageCache.evict(idList);
+        }
+        return deleted;
+    }
+    
+    /**
+     * Удалить всех, кто создан раньше createdBefore (два запроса на всю выборку)
+     * @param createdBefore
+     * @return количество удалённых людей
+     */
+    @Transactional
+    public int deleteCreatedBefore(Date createdBefore) {
+        peopleRepository.detachItemsOfPeopleCreatedBefore(createdBefore);
+        return evictAllIfDeleted(peopleRepository.deletePeopleCreatedBefore(createdBefore));
+    }
+    
+    /**
+     * Удалить всех людей с таким настроением (два запроса на всю выборку)
+     * @param mood
+     * @return количество удалённых людей
+     */
+    @Transactional
+    public int deleteByMood(Mood mood) {
+        peopleRepository.detachItemsOfPeopleWithMood(mood);
+        return evictAllIfDeleted(peopleRepository.deletePeopleWithMood(mood));
+    }
+    
+    private static DataIntegrityViolationException translate(DataIntegrityViolationException e, String email) {
+        return DuplicateEmailException.isDuplicateEmail(e) ? new DuplicateEmailException(email, e) : e;
+    }
+    
+    //    id удалённых неизвестны - сбрасываем все страницы
+    private int evictAllIfDeleted(int deleted) {
+        if (deleted > 0) {
+            pageCache.evictAll();
+        }
+        return deleted;
     }
     
     public void test() {
@@ -0,0 +1,27 @@
+-- Исходная схема (раньше создавалась вручную из SQL/Scripts.sql).
+-- На уже существующей БД этот скрипт не выполняется:
+-- Flyway помечает такую БД как baseline (версия 1) и применяет только следующие миграции.
+
+-- Последовательности с шагом 50 - как allocationSize у @SequenceGenerator (pooled optimizer)
+CREATE SEQUENCE person_id_seq INCREMENT BY 50;
+
+CREATE TABLE person
+(
+    id            INT DEFAULT nextval('person_id_seq') PRIMARY KEY,
+    name          VARCHAR(100) NOT NULL,
+    age           INT          NOT NULL CHECK (age >= 0),
+    email         VARCHAR(100),
+    date_of_birth DATE,
+    created_at    TIMESTAMP,
+    mood          VARCHAR(20),
+    version       INT          NOT NULL DEFAULT 0
+);
+
+CREATE SEQUENCE item_id_seq INCREMENT BY 50;
+
+CREATE TABLE item
+(
+    id        INT DEFAULT nextval('item_id_seq') PRIMARY KEY,
+    person_id INT REFERENCES person (id) ON DELETE SET NULL,
+    item_name VARCHAR(100) NOT NULL
+);
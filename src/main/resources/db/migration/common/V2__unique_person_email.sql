@@ -0,0 +1,2 @@
+-- findByEmail: точный поиск по уникальному индексу вместо последовательного сканирования
+CREATE UNIQUE INDEX person_email_key ON person (email);
@@ -0,0 +1,12 @@
+-- Индексы под производные запросы репозиториев.
+-- PostgreSQL не создаёт индекс на внешний ключ сам, поэтому раньше
+-- ItemsRepository.findByOwner и ленивая загрузка Person.items сканировали всю таблицу item
+
+-- findByOwner, Person.items (where person_id = ?), ON DELETE SET NULL при удалении человека
+CREATE INDEX item_person_id_idx ON item (person_id);
+
+-- findByItemName
+CREATE INDEX item_item_name_idx ON item (item_name);
+
+-- findByName, findByNameOrderByAge: строки уже отсортированы по age внутри одного name
+CREATE INDEX person_name_age_idx ON person (name, age);
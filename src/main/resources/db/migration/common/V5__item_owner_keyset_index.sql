@@ -0,0 +1,8 @@
+-- Вещи одного владельца постранично (ItemsRepository.findByOwnerIdAndIdGreaterThanOrderByIdAsc):
+-- where person_id = ? and id > ? order by id limit ? - по составному индексу без сортировки,
+-- сколько бы вещей ни было у владельца.
+-- Он же обслуживает всё, что раньше шло по item_person_id_idx (поиск по person_id,
+-- ON DELETE SET NULL, количество вещей по владельцам), поэтому старый индекс удаляем
+CREATE INDEX item_person_id_id_idx ON item (person_id, id);
+
+DROP INDEX item_person_id_idx;
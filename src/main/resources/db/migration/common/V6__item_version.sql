@@ -0,0 +1,3 @@
+-- Оптимистическая блокировка для Item (@Version): UPDATE/DELETE ... where id = ? and version = ?
+-- Существующие вещи получают версию 0
+ALTER TABLE item ADD COLUMN version INT NOT NULL DEFAULT 0;
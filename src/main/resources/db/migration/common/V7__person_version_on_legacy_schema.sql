@@ -0,0 +1,4 @@
+-- БД, созданные вручную по SQL/Scripts.sql, помечены как baseline (версия 1), V1 на них не выполнялась,
+-- и столбца для оптимистической блокировки (@Version в Person) у них нет.
+-- Существующие люди получают версию 0. На БД, созданных V1, ничего не меняется
+ALTER TABLE person ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
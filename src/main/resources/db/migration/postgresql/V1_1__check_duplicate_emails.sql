@@ -0,0 +1,27 @@
+-- Проверка перед V2 (уникальный индекс person_email_key) для БД, созданной вручную до Flyway (baseline).
+-- Если email повторяются, CREATE UNIQUE INDEX упал бы с "could not create unique index" без списка адресов.
+-- Дубликаты не удаляются автоматически: какую запись оставить, решает человек.
+-- Найти их: SELECT id, name, email FROM person WHERE email IN
+--   (SELECT email FROM person GROUP BY email HAVING count(*) > 1) ORDER BY email, id;
+-- После исправления (UPDATE ... SET email = NULL или другой адрес) перезапустить приложение:
+-- миграция выполняется в транзакции и при ошибке не считается применённой.
+DO
+$$
+DECLARE
+    duplicates TEXT;
+BEGIN
+    SELECT string_agg(email || ' x' || copies, ', ' ORDER BY email)
+    INTO duplicates
+    FROM (SELECT email, count(*) AS copies
+          FROM person
+          WHERE email IS NOT NULL
+          GROUP BY email
+          HAVING count(*) > 1
+          ORDER BY email
+          LIMIT 20) d;
+    IF duplicates IS NOT NULL THEN
+        RAISE EXCEPTION 'person.email must be unique before V2__unique_person_email, duplicates: %', duplicates
+            USING HINT = 'SELECT id, name, email FROM person WHERE email IN (SELECT email FROM person GROUP BY email HAVING count(*) > 1)';
+    END IF;
+END
+$$;
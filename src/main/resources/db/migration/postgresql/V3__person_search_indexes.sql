@@ -0,0 +1,15 @@
+-- Индексы для поиска людей (только PostgreSQL).
+
+-- findByName / findByNameStartingWith (name = ?, name LIKE 'abc%').
+-- Обычный btree при не-C collation не подходит для LIKE, нужен класс операторов text_pattern_ops
+CREATE INDEX person_name_pattern_idx ON person (name text_pattern_ops);
+
+-- GET /people/search?q= - поиск по началу имени или email без учёта регистра
+CREATE INDEX person_lower_name_pattern_idx ON person (lower(name) text_pattern_ops);
+CREATE INDEX person_lower_email_pattern_idx ON person (lower(email) text_pattern_ops);
+
+-- GET /people/search?q= - поиск по подстроке (LIKE '%abc%') через триграммы.
+-- Для CREATE EXTENSION нужны права владельца БД
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX person_lower_name_trgm_idx ON person USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX person_lower_email_trgm_idx ON person USING gin (lower(email) gin_trgm_ops);
@@ -0,0 +1,36 @@
+-- На БД, созданных вручную по SQL/Scripts.sql (baseline, V1 не выполнялась), id у person и item -
+-- identity-столбцы (GENERATED BY DEFAULT AS IDENTITY) с последовательностями с шагом 1.
+-- Hibernate их не видит (в information_schema.sequences нет identity-последовательностей,
+-- проверка схемы падает), а с шагом 1 pooled optimizer (allocationSize = 50) выдавал бы
+-- уже занятые и отрицательные id.
+-- Такие столбцы переводятся на обычные последовательности, как в V1. Первое значение - на 50 больше
+-- последнего выданного: pooled optimizer раздаёт 50 id ниже полученного значения.
+DO
+$$
+    DECLARE
+        t       TEXT;
+        last_id BIGINT;
+    BEGIN
+        FOREACH t IN ARRAY ARRAY ['person', 'item']
+            LOOP
+                IF EXISTS(SELECT 1
+                          FROM information_schema.columns
+                          WHERE table_schema = current_schema()
+                            AND table_name = t
+                            AND column_name = 'id'
+                            AND is_identity = 'YES') THEN
+                    EXECUTE format('SELECT greatest((SELECT coalesce(max(id), 0) FROM %I), '
+                                       || '(SELECT last_value FROM %s))', t, pg_get_serial_sequence(t, 'id'))
+                        INTO last_id;
+                    EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY', t);
+                    EXECUTE format('CREATE SEQUENCE %I INCREMENT BY 50 START WITH %s OWNED BY %I.id',
+                                   t || '_id_seq', last_id + 50, t);
+                    EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)', t, t || '_id_seq');
+                END IF;
+            END LOOP;
+    END
+$$;
+
+-- Последовательности, созданные вручную с другим шагом (например, SERIAL)
+ALTER SEQUENCE person_id_seq INCREMENT BY 50;
+ALTER SEQUENCE item_id_seq INCREMENT BY 50;
@@ -0,0 +1,101 @@
+package ru.alexsem.springcourse;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.config.SpringConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Настоящий SpringConfig для тестов: встроенная H2 в режиме PostgreSQL
+ * (src/test/resources/hibernate.properties), у каждого контекста своя пустая база,
+ * схему создают миграции Flyway.
+ * Свойства из hibernate.properties переопределяются парами "ключ=значение":
+ * TestContexts.start("people.page_size.max=50")
+ *
+ * Для проверок, которые на H2 не воспроизвести, - startPostgres(): встроенный PostgreSQL
+ * (один сервер на все тесты, у каждого контекста своя база).
+ */
+public final class TestContexts {
+    
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    
+    private static EmbeddedPostgres postgres;
+    
+    private TestContexts() {
+    }
+    
+    public static AnnotationConfigWebApplicationContext start(String... properties) {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("hibernate.connection.url",
+                "jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        for (String property : properties) {
+            int separator = property.indexOf('=');
+            overrides.put(property.substring(0, separator), property.substring(separator + 1));
+        }
+        
+        AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+//        Шаблоны из src/main/webapp - для тестов контроллеров через MockMvc
+        context.setServletContext(new MockServletContext("src/main/webapp", new FileSystemResourceLoader()));
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", overrides));
+        context.register(SpringConfig.class);
+        context.refresh();
+        return context;
+    }
+    
+    public static AnnotationConfigWebApplicationContext startPostgres(String... properties) {
+        return startPostgresAt(postgresUrl(), properties);
+    }
+    
+    /**
+     * @param url база во встроенном PostgreSQL (postgresUrl()), уже подготовленная тестом
+     */
+    public static AnnotationConfigWebApplicationContext startPostgresAt(String url, String... properties) {
+        String[] all = new String[properties.length + 5];
+        all[0] = "hibernate.driver_class=org.postgresql.Driver";
+        all[1] = "hibernate.connection.url=" + url;
+        all[2] = "hibernate.connection.username=postgres";
+        all[3] = "hibernate.connection.password=";
+        all[4] = "hibernate.dialect=org.hibernate.dialect.PostgreSQL10Dialect";
+        System.arraycopy(properties, 0, all, 5, properties.length);
+        return start(all);
+    }
+    
+    /**
+     * @return JDBC URL новой пустой базы во встроенном PostgreSQL (пользователь postgres без пароля)
+     */
+    public static synchronized String postgresUrl() {
+        try {
+            if (postgres == null) {
+                postgres = EmbeddedPostgres.start();
+                EmbeddedPostgres server = postgres;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        server.close();
+                    } catch (IOException ignored) {
+                    }
+                }));
+            }
+            String database = "test" + DATABASES.incrementAndGet();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE DATABASE " + database);
+            }
+            return postgres.getJdbcUrl("postgres", database);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create a test database", e);
+        }
+    }
+}
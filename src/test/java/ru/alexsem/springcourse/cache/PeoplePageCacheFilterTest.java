@@ -0,0 +1,143 @@
+package ru.alexsem.springcourse.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Страница списка - 2 человека: /people (первые два) и /people?after=... (последняя страница)
+ */
+public class PeoplePageCacheFilterTest {
+    
+    private AnnotationConfigWebApplicationContext context;
+    private MockMvc mvc;
+    private PeopleService peopleService;
+    private Person[] people;
+    
+    @Before
+    public void start() {
+        context = TestContexts.start("people.page_size=2");
+        mvc = MockMvcBuilders.webAppContextSetup(context)
+                .addFilters(context.getBean(PeoplePageCacheFilter.class))
+                .build();
+        peopleService = context.getBean(PeopleService.class);
+        people = new Person[4];
+        for (int i = 0; i < people.length; i++) {
+            people[i] = save("cached" + i);
+        }
+    }
+    
+    @After
+    public void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void updateEvictsOnlyPagesCoveringTheId() throws Exception {
+        String lastPage = "/people?after=" + people[1].getId();
+        render("/people", lastPage, show(0), show(2));
+        assertCached("/people", lastPage, show(0), show(2));
+        
+        Person person = peopleService.findOne(people[0].getId());
+        peopleService.update(person.getId(), form(person, "changed"));
+        
+        assertRendered("/people", show(0));
+        assertCached(lastPage, show(2));
+    }
+    
+    @Test
+    public void insertEvictsOnlyLastPage() throws Exception {
+        String lastPage = "/people?after=" + people[1].getId();
+        render("/people", lastPage);
+        
+        save("new");
+        
+        assertRendered(lastPage);
+        assertCached("/people");
+    }
+    
+    @Test
+    public void matchingEtagIsNotModifiedWithoutRendering() throws Exception {
+        perform(show(1));
+        String etag = mvc.perform(get(show(1))).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        
+        MvcResult second = mvc.perform(get(show(1)).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        assertFalse(second.getRequest().isAsyncStarted());
+    }
+    
+    @Test
+    public void pageRenderedWhileEvictedIsNotCached() throws Exception {
+        MvcResult started = mvc.perform(get(show(3))).andReturn();
+        assertTrue(started.getRequest().isAsyncStarted());
+//        Изменение между чтением и записью страницы в кэш
+        Person person = peopleService.findOne(people[3].getId());
+        peopleService.update(person.getId(), form(person, "raced"));
+        mvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+        
+        assertRendered(show(3));
+    }
+    
+    private void render(String... urls) throws Exception {
+        for (String url : urls) {
+            perform(url);
+        }
+    }
+    
+    private void assertCached(String... urls) throws Exception {
+        for (String url : urls) {
+            assertFalse(url, perform(url));
+        }
+    }
+    
+    private void assertRendered(String... urls) throws Exception {
+        for (String url : urls) {
+            assertTrue(url, perform(url));
+        }
+    }
+    
+//    true - страницу отрисовал контроллер (асинхронный обработчик), false - отдана из кэша
+    private boolean perform(String url) throws Exception {
+        MvcResult result = mvc.perform(get(url)).andExpect(status().isOk()).andReturn();
+        if (!result.getRequest().isAsyncStarted()) {
+            return false;
+        }
+        mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        return true;
+    }
+    
+    private String show(int index) {
+        return "/people/" + people[index].getId();
+    }
+    
+    private Person save(String name) {
+        Person person = new Person(name, 20);
+        person.setEmail(name + "@mail.ru");
+        peopleService.save(person);
+        return person;
+    }
+    
+    private static Person form(Person person, String name) {
+        Person form = new Person(name, person.getAge());
+        form.setEmail(person.getEmail());
+        form.setVersion(person.getVersion());
+        return form;
+    }
+}
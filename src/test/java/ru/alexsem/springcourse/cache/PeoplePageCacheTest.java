@@ -0,0 +1,103 @@
+package ru.alexsem.springcourse.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.alexsem.springcourse.cache.PeoplePageCache.CachedPage;
+import ru.alexsem.springcourse.dto.KeysetPage;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeoplePageCacheTest {
+    
+    private final PeoplePageCache cache = new PeoplePageCache(100, 300, new SimpleMeterRegistry());
+    
+    @Test
+    public void pageContainsIdsOfItsRange() {
+        CachedPage page = page(10, 20);
+        assertFalse(page.contains(9));
+        assertTrue(page.contains(10));
+        assertTrue(page.contains(20));
+        assertFalse(page.contains(21));
+        
+        assertFalse(page.containsAny(new int[]{}));
+        assertFalse(page.containsAny(new int[]{1, 9, 21, 30}));
+        assertTrue(page.containsAny(new int[]{1, 15, 30}));
+        assertTrue(page.containsAny(new int[]{10}));
+        assertTrue(page.containsAny(new int[]{20, 21}));
+    }
+    
+    @Test
+    public void listPagesCoverTheirKeysetRange() {
+//        Первая страница: всё до последнего id на ней
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, 3}, range(null, null, new KeysetPage<>(List.of(), 3, 3, null)));
+//        Страница после id=3
+        assertArrayEquals(new int[]{4, 6}, range(3, null, new KeysetPage<>(List.of(), 3, 6, 4)));
+//        Последняя страница: новый человек появится на ней
+        assertArrayEquals(new int[]{7, Integer.MAX_VALUE}, range(6, null, new KeysetPage<>(List.of(), 3, null, 7)));
+//        Страница перед id=7 и самая первая из before-страниц
+        assertArrayEquals(new int[]{4, 6}, range(null, 7, new KeysetPage<>(List.of(), 3, 6, 4)));
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, 3}, range(null, 4, new KeysetPage<>(List.of(), 3, 3, null)));
+//        Курсоры на границах int не переполняются
+        assertArrayEquals(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE},
+                range(Integer.MAX_VALUE, null, new KeysetPage<>(List.of(), 3, null, Integer.MAX_VALUE)));
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE},
+                range(null, Integer.MIN_VALUE, new KeysetPage<>(List.of(), 3, Integer.MIN_VALUE, null)));
+    }
+    
+    @Test
+    public void evictRemovesOnlyPagesCoveringTheId() {
+        cache.put("/people", page(Integer.MIN_VALUE, 3), cache.generation());
+        cache.put("/people?after=3", page(4, Integer.MAX_VALUE), cache.generation());
+        cache.put("/people/2", page(2, 2), cache.generation());
+        
+        cache.evict(2);
+        assertNull(cache.get("/people"));
+        assertNull(cache.get("/people/2"));
+        assertNotNull(cache.get("/people?after=3"));
+        
+//        Новый id за последним - на последней странице
+        cache.evict(1000);
+        assertNull(cache.get("/people?after=3"));
+    }
+    
+    @Test
+    public void evictManyRemovesPagesWithAnyOfTheIds() {
+        cache.put("/people/2", page(2, 2), cache.generation());
+        cache.put("/people/5", page(5, 5), cache.generation());
+        cache.put("/people/8", page(8, 8), cache.generation());
+        
+        cache.evict(List.of(8, 2, 4));
+        assertNull(cache.get("/people/2"));
+        assertNotNull(cache.get("/people/5"));
+        assertNull(cache.get("/people/8"));
+    }
+    
+    @Test
+    public void pageRenderedBeforeEvictionIsNotCached() {
+        long generation = cache.generation();
+//        Пока страница рисовалась, изменили другого человека
+        cache.evict(100);
+        cache.put("/people/2", page(2, 2), generation);
+        assertNull(cache.get("/people/2"));
+        
+        cache.put("/people/2", page(2, 2), cache.generation());
+        assertNotNull(cache.get("/people/2"));
+    }
+    
+    private static int[] range(Integer after, Integer before, KeysetPage<?> page) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        PeoplePageCache.markCacheable(request, after, before, page);
+        return PeoplePageCache.idRange(request);
+    }
+    
+    private static CachedPage page(int fromId, int toId) {
+        return new CachedPage(new byte[0], "text/html", "\"etag\"", new int[]{fromId, toId});
+    }
+}
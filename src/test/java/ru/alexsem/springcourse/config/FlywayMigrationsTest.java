@@ -0,0 +1,141 @@
+package ru.alexsem.springcourse.config;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.Test;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Миграции db/migration на пустой БД и проверка схемы Hibernate (hibernate.hbm2ddl.auto=validate)
+ * после них: на H2 в режиме PostgreSQL и на настоящем PostgreSQL
+ * (встроенный сервер, см. TestContexts.postgresUrl()), где есть ещё db/migration/postgresql.
+ * И на БД, созданной вручную по SQL/Scripts.sql до Flyway: её миграции доводят от baseline.
+ */
+public class FlywayMigrationsTest {
+    
+    @Test
+    public void h2MigratesAndPassesSchemaValidation() {
+        try (AnnotationConfigWebApplicationContext context = TestContexts.start()) {
+            assertMigratedAndUsable(context, 6, "7");
+        }
+    }
+    
+    @Test
+    public void postgresMigratesAndPassesSchemaValidation() {
+        try (AnnotationConfigWebApplicationContext context = TestContexts.startPostgres()) {
+            assertMigratedAndUsable(context, 9, "7.1");
+        }
+    }
+    
+    @Test
+    public void legacyScriptsSchemaMigratesAndPassesSchemaValidation() throws Exception {
+        String url = legacyDatabase();
+        try (AnnotationConfigWebApplicationContext context = TestContexts.startPostgresAt(url)) {
+//            baseline (версия 1) и все миграции после неё
+            assertMigratedAndUsable(context, 9, "7.1");
+            
+            PeopleService peopleService = context.getBean(PeopleService.class);
+            ItemsService itemsService = context.getBean(ItemsService.class);
+            Person tom = peopleService.findOne(1);
+            assertEquals(0, tom.getVersion());
+//            Шаг последовательностей 50: новые id идут после старых, без повторов и отрицательных
+            for (int i = 0; i < 60; i++) {
+                Person person = new Person("Legacy" + i, 20);
+                person.setEmail("legacy" + i + "@mail.ru");
+                peopleService.save(person);
+                assertTrue("person id " + person.getId(), person.getId() > 5);
+                assertTrue("item id", itemsService.add(person.getId(), "Thing").getId() > 3);
+            }
+            //            5 из скрипта, "Migrated" из assertMigratedAndUsable и 60 новых
+            assertEquals(66, context.getBean(PeopleRepository.class).count());
+        }
+    }
+    
+    @Test
+    public void duplicateEmailsStopMigrationWithTheirList() throws Exception {
+        String url = legacyDatabase();
+        execute(url, "INSERT INTO person (name, age, email) VALUES "
+                + "('Tom', 26, 'tom@mail.ru'), ('No email', 1, NULL), ('No email', 2, NULL)");
+        
+        try {
+            postgresFlyway(url).load().migrate();
+            fail("V2 should not run over duplicate emails");
+        } catch (FlywayException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage()
+                    .contains("person.email must be unique before V2__unique_person_email, duplicates: tom@mail.ru x2"));
+        }
+        assertEquals("1", postgresFlyway(url).load().info().current().getVersion().getVersion());
+        
+        execute(url, "UPDATE person SET email = 'tom2@mail.ru' WHERE age = 26");
+        try (AnnotationConfigWebApplicationContext context = TestContexts.startPostgresAt(url)) {
+            assertMigratedAndUsable(context, 9, "7.1");
+        }
+    }
+    
+    //    БД, созданная вручную до Flyway (src/test/resources/legacy/scripts_sql_schema.sql)
+    private static String legacyDatabase() throws IOException, SQLException {
+        String url = TestContexts.postgresUrl();
+        try (InputStream script = FlywayMigrationsTest.class.getResourceAsStream("/legacy/scripts_sql_schema.sql")) {
+            execute(url, new String(script.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        return url;
+    }
+    
+    /**
+     * Контекст поднялся - значит, EntityManagerFactory прошла validate по схеме из миграций.
+     * Дополнительно: применены все миграции своей БД и сущности пишутся и читаются
+     */
+    private static void assertMigratedAndUsable(AnnotationConfigWebApplicationContext context, int migrations,
+                                                String version) {
+        Flyway flyway = context.getBean(Flyway.class);
+        assertEquals(0, flyway.info().pending().length);
+        assertEquals(migrations, flyway.info().applied().length);
+        MigrationInfo current = flyway.info().current();
+        assertEquals(version, current.getVersion().getVersion());
+        assertEquals("validate", context.getBean(EntityManagerFactory.class).getProperties().get("hibernate.hbm2ddl.auto"));
+        
+        PeopleService peopleService = context.getBean(PeopleService.class);
+        Person person = new Person("Migrated", 30);
+        person.setEmail("migrated@mail.ru");
+        peopleService.save(person);
+        assertEquals("Migrated", peopleService.findOne(person.getId()).getName());
+//        Поиск - нативный SQL: проверяется на обеих базах
+        assertEquals(person.getId(), peopleService.search("migrated@", null).get(0).getId());
+    }
+    
+    private static FluentConfiguration postgresFlyway(String url) {
+        return Flyway.configure()
+                .dataSource(url, "postgres", "")
+                .locations("classpath:db/migration/common", "classpath:db/migration/postgresql")
+                .baselineOnMigrate(true)
+                .baselineVersion("1");
+    }
+    
+    private static void execute(String url, String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "postgres", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.alexsem.springcourse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ru.alexsem.springcourse.config.ReadYourWrites.Client;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadWriteRoutingDataSourceTest {
+    
+    private static final long PIN_AFTER_WRITE_MILLIS = 500;
+    
+    private ReadWriteRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate write;
+    private TransactionTemplate read;
+    
+    @Before
+    public void setUp() throws InterruptedException {
+        routing = new ReadWriteRoutingDataSource(pool("routing-primary"), List.of(pool("routing-replica")),
+                "select 0", 5, 1, new SimpleMeterRegistry());
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        write = new TransactionTemplate(transactionManager);
+        read = new TransactionTemplate(transactionManager);
+        read.setReadOnly(true);
+//        Реплика включается после первой проверки отставания
+        for (int i = 0; i < 100 && !"ROUTING-REPLICA".equals(read.execute(status -> database())); i++) {
+            Thread.sleep(50);
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        ReadYourWrites.attach(null);
+        routing.close();
+    }
+    
+    @Test
+    public void readsGoToReplicaAndWritesToPrimary() {
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+        assertEquals("ROUTING-PRIMARY", write.execute(status -> database()));
+    }
+    
+    @Test
+    public void clientReadsItsOwnWritesFromPrimaryAndOthersFromReplica() {
+        AtomicLong cookie = new AtomicLong();
+        Client writer = new Client(0, PIN_AFTER_WRITE_MILLIS, cookie::set);
+        ReadYourWrites.attach(writer);
+        insert();
+        assertTrue(cookie.get() > System.currentTimeMillis());
+        assertEquals("ROUTING-PRIMARY", read.execute(status -> database()));
+        assertFalse(ReadYourWrites.readFromReplica());
+        
+        ReadYourWrites.attach(client());
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+        assertTrue(ReadYourWrites.readFromReplica());
+        
+        ReadYourWrites.attach(null);
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+        
+//        Следующий запрос того же клиента - с моментом из cookie
+        ReadYourWrites.attach(new Client(cookie.get(), PIN_AFTER_WRITE_MILLIS, until -> { }));
+        assertEquals("ROUTING-PRIMARY", read.execute(status -> database()));
+    }
+    
+    @Test
+    public void pinExpires() throws InterruptedException {
+        ReadYourWrites.attach(client());
+        insert();
+        assertEquals("ROUTING-PRIMARY", read.execute(status -> database()));
+        
+        Thread.sleep(PIN_AFTER_WRITE_MILLIS + 100);
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+    }
+    
+    @Test
+    public void writeTransactionWithoutDmlDoesNotPinReads() {
+        ReadYourWrites.attach(client());
+        write.execute(status -> database());
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+    }
+    
+    @Test
+    public void rolledBackWriteDoesNotPinReads() {
+        ReadYourWrites.attach(client());
+        write.execute(status -> {
+            ReadYourWrites.statementPrepared("insert into person(name) values (?)");
+            status.setRollbackOnly();
+            return database();
+        });
+        assertEquals("ROUTING-REPLICA", read.execute(status -> database()));
+    }
+    
+    @Test
+    public void readTransactionKeepsItsRoute() {
+        ReadYourWrites.attach(client());
+        read.execute(status -> {
+            assertTrue(routing.bindReadRoute());
+            assertEquals("ROUTING-REPLICA", database());
+//            Маршрут выбран в начале транзакции и до её конца не меняется
+            ReadYourWrites.attach(new Client(System.currentTimeMillis() + PIN_AFTER_WRITE_MILLIS,
+                    PIN_AFTER_WRITE_MILLIS, until -> { }));
+            assertTrue(routing.bindReadRoute());
+            assertEquals("ROUTING-REPLICA", database());
+            return null;
+        });
+    }
+    
+    private void insert() {
+        write.execute(status -> {
+//            Так Hibernate сообщает о SQL (StatementInspector в SpringConfig)
+            ReadYourWrites.statementPrepared("insert into person(name) values (?)");
+            return database();
+        });
+    }
+    
+    private static Client client() {
+        return new Client(0, PIN_AFTER_WRITE_MILLIS, until -> { });
+    }
+    
+    private String database() {
+        return jdbcTemplate.queryForObject("select database()", String.class);
+    }
+    
+    private static HikariDataSource pool(String database) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(database);
+        pool.setJdbcUrl("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+        pool.setUsername("sa");
+        return pool;
+    }
+}
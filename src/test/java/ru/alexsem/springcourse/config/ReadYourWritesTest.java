@@ -0,0 +1,125 @@
+package ru.alexsem.springcourse.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.cache.PeoplePageCacheFilter;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Реплика - та же база H2, что и primary: проверяется маршрут и кэши, а не отставание
+ */
+public class ReadYourWritesTest {
+    
+    private static final String DATABASE = "jdbc:h2:mem:read-your-writes;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static MockMvc mvc;
+    private static Statistics statistics;
+    
+    @BeforeClass
+    public static void start() throws InterruptedException {
+        context = TestContexts.start("hibernate.connection.url=" + DATABASE, "hibernate.replica.urls=" + DATABASE,
+                "hibernate.replica.lag_query=select 0", "hibernate.replica.check_interval_seconds=1",
+                "hibernate.replica.pin_after_write_seconds=60");
+        mvc = MockMvcBuilders.webAppContextSetup(context)
+                .addFilters(context.getBean(ReadYourWritesFilter.class), context.getBean(PeoplePageCacheFilter.class))
+                .build();
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        
+//        Реплика включается после первой проверки отставания
+        ReadWriteRoutingDataSource routing = context.getBean(ReadWriteRoutingDataSource.class);
+        TransactionTemplate read = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        read.setReadOnly(true);
+        for (int i = 0; i < 100 && !read.execute(status -> routing.bindReadRoute()); i++) {
+            Thread.sleep(50);
+        }
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void replicaReadStaysOutOfSharedCaches() throws Exception {
+        int id = save("replica@mail.ru");
+        long entityPuts = statistics.getSecondLevelCachePutCount();
+        long queryPuts = statistics.getQueryCachePutCount();
+        
+        MvcResult result = show(id, null);
+        assertNull(result.getResponse().getCookie(ReadYourWritesFilter.COOKIE));
+        assertEquals(entityPuts, statistics.getSecondLevelCachePutCount());
+        assertEquals(queryPuts, statistics.getQueryCachePutCount());
+//        Страница не попала в PeoplePageCache: следующий запрос снова идёт в контроллер
+        assertTrue(mvc.perform(get("/people/" + id)).andReturn().getRequest().isAsyncStarted());
+    }
+    
+    @Test
+    public void clientReadsFromPrimaryAfterItsOwnWrite() throws Exception {
+        int id = save("writer@mail.ru");
+        MvcResult update = mvc.perform(patch("/people/" + id)
+                        .param("name", "written").param("age", "30").param("email", "writer@mail.ru")
+                        .param("version", "0"))
+                .andExpect(status().is3xxRedirection())
+                .andReturn();
+        Cookie cookie = update.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+        assertNotNull(cookie);
+        assertTrue(cookie.isHttpOnly());
+        
+//        Чтение с primary можно кэшировать
+        long queryPuts = statistics.getQueryCachePutCount();
+        show(id, cookie);
+        assertTrue(statistics.getQueryCachePutCount() > queryPuts);
+        assertFalse(mvc.perform(get("/people/" + id)).andReturn().getRequest().isAsyncStarted());
+    }
+    
+    @Test
+    public void rolledBackWriteDoesNotPin() throws Exception {
+        int id = save("reader@mail.ru");
+//        UPDATE с устаревшей версией не находит строку - транзакция откатывается
+        mvc.perform(patch("/people/" + id)
+                        .param("name", "stale").param("age", "30").param("email", "reader@mail.ru")
+                        .param("version", "5"))
+                .andExpect(status().isConflict())
+                .andExpect(result -> assertNull(result.getResponse().getCookie(ReadYourWritesFilter.COOKIE)));
+    }
+    
+    private static int save(String email) {
+        Person person = new Person("Reader", 20);
+        person.setEmail(email);
+        context.getBean(PeopleService.class).save(person);
+        return person.getId();
+    }
+    
+    private static MvcResult show(int id, Cookie cookie) throws Exception {
+        MvcResult started = mvc.perform(cookie == null ? get("/people/" + id) : get("/people/" + id).cookie(cookie))
+                .andReturn();
+        return mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.ItemsService;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ItemsControllerTest {
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static MockMvc mvc;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        mvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void ownerItemsPageLinksToFirstPage() throws Exception {
+        Person owner = new Person("Owner", 30);
+        owner.setEmail("owner@items.ru");
+        context.getBean(PeopleService.class).save(owner);
+        int item = context.getBean(ItemsService.class).add(owner.getId(), "Lamp").getId();
+        
+        perform("/items/owner/" + owner.getId() + "?after=" + item)
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("First")));
+    }
+    
+    @Test
+    public void ownerItemsOfMissingPersonIsNotFound() throws Exception {
+        perform("/items/owner/999999").andExpect(status().isNotFound());
+//        Ссылка "First" на странице после первой - не 500
+        perform("/items/owner/999999?after=5").andExpect(status().isNotFound());
+    }
+    
+    private static ResultActions perform(String url) throws Exception {
+        MvcResult started = mvc.perform(get(url)).andReturn();
+        return mvc.perform(asyncDispatch(started));
+    }
+}
@@ -0,0 +1,170 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class PeopleControllerTest {
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static MockMvc mvc;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        mvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void importsCsv() throws Exception {
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email,items\nTom,25,tom@mail.ru,TV;Airpods\n\nAnn,31,ann@mail.ru,\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Imported 2 people"));
+    }
+    
+    @Test
+    public void malformedCsvLineIsBadRequestWithLineNumber() throws Exception {
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nBob,40,bob@mail.ru\nKate,old,kate@mail.ru\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Line 3: age should be a number"));
+        
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nBob,40\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Line 2: expected name,age,email[,items]"));
+//        Импорт откатывается целиком
+        assertTrue(context.getBean(PeopleRepository.class).findByEmail("bob@mail.ru").isEmpty());
+    }
+    
+    @Test
+    public void malformedJsonLineIsBadRequestWithLineNumber() throws Exception {
+        mvc.perform(post("/people/import").contentType("application/x-ndjson")
+                        .content("{\"name\":\"Max\",\"age\":20,\"email\":\"max@mail.ru\"}\n"
+                                + "{\"name\":\"Eve\",\"age\":\"old\",\"email\":\"eve@mail.ru\"}\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason(startsWith("Line 2: ")));
+        
+        mvc.perform(post("/people/import").contentType("application/x-ndjson")
+                        .content("{\"name\":\"Max\",\"age\":20,\"email\":\"max@mail.ru\"}\n{\"name\":\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason(startsWith("Line ")));
+        assertTrue(context.getBean(PeopleRepository.class).findByEmail("max@mail.ru").isEmpty());
+    }
+    
+    @Test
+    public void invalidPersonIsBadRequestWithLineNumber() throws Exception {
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nValid,40,valid@mail.ru\nX,40,x@mail.ru\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Line 3: Name should be between 2 and 30 characters"));
+        
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nValid,40,valid@mail.ru\nNegative,-3,negative@mail.ru\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Line 3: Age should be greater than 0"));
+        
+        mvc.perform(post("/people/import").contentType("application/x-ndjson")
+                        .content("{\"name\":\"Valid\",\"age\":40,\"email\":\"valid@mail.ru\"}\n"
+                                + "{\"name\":\"No email\",\"age\":40}\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Line 2: Email should not be empty"));
+        assertTrue(context.getBean(PeopleRepository.class).findByEmail("valid@mail.ru").isEmpty());
+    }
+    
+    @Test
+    public void duplicateEmailIsConflict() throws Exception {
+        Person existing = new Person("Existing", 30);
+        existing.setEmail("existing@mail.ru");
+        context.getBean(PeopleService.class).save(existing);
+        
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nFresh,40,fresh@mail.ru\nCopy,40,existing@mail.ru\n"))
+                .andExpect(status().isConflict());
+//        Дубликат внутри файла
+        mvc.perform(post("/people/import").contentType("text/csv")
+                        .content("name,age,email\nFresh,40,fresh@mail.ru\nAgain,41,fresh@mail.ru\n"))
+                .andExpect(status().isConflict());
+        assertTrue(context.getBean(PeopleRepository.class).findByEmail("fresh@mail.ru").isEmpty());
+    }
+    
+    @Test
+    public void exportsKnownFormats() throws Exception {
+        mvc.perform(get("/people/export").param("format", "ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"));
+        mvc.perform(get("/people/export/items").param("format", "CSV"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"));
+    }
+    
+    @Test
+    public void unknownExportFormatIsBadRequest() throws Exception {
+        mvc.perform(get("/people/export").param("format", "xml"))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Unknown export format xml, expected csv or ndjson"));
+        mvc.perform(get("/people/export/items").param("format", "json"))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    public void staleEditIsConflictWithVersionFromPrimary() throws Exception {
+        PeopleService peopleService = context.getBean(PeopleService.class);
+        Person person = new Person("cached", 20);
+        person.setEmail("conflict@mail.ru");
+        peopleService.save(person);
+//        Проекция PersonDetails в кэше запросов, строку меняют в обход Hibernate - как отставшая реплика
+        peopleService.findDetails(person.getId());
+        new JdbcTemplate(context.getBean("dataSource", DataSource.class))
+                .update("update person set name = 'fresh', version = 1 where id = ?", person.getId());
+        context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache()
+                .evictEntityData(Person.class, person.getId());
+        
+        MvcResult result = mvc.perform(patch("/people/" + person.getId())
+                        .param("name", "mine").param("age", "30").param("email", "conflict@mail.ru")
+                        .param("version", "0"))
+                .andExpect(status().isConflict())
+                .andReturn();
+        Person form = (Person) result.getModelAndView().getModel().get("person");
+        assertEquals("mine", form.getName());
+        assertEquals(1, form.getVersion());
+        assertThat(result.getResponse().getContentAsString(), containsString("now fresh, 20"));
+        
+//        Повторная отправка с версией из формы сохраняет
+        mvc.perform(patch("/people/" + person.getId())
+                        .param("name", "mine").param("age", "30").param("email", "conflict@mail.ru")
+                        .param("version", String.valueOf(form.getVersion())))
+                .andExpect(status().is3xxRedirection());
+        assertEquals("mine", peopleService.findOne(person.getId()).getName());
+    }
+}
@@ -0,0 +1,149 @@
+package ru.alexsem.springcourse.controllers;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.io.GzipResponseFilter;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.services.PeopleService;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import static org.hamcrest.CoreMatchers.allOf;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class PeopleRestControllerTest {
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static MockMvc mvc;
+    private static PeopleService peopleService;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        mvc = MockMvcBuilders.webAppContextSetup(context).build();
+        peopleService = context.getBean(PeopleService.class);
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void patchChangesOnlyGivenFields() throws Exception {
+        Person person = save("patch");
+        
+        mvc.perform(patch("/api/people/" + person.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"v0\"")
+                        .content("{\"age\": 41}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v1\""))
+                .andExpect(content().string(allOf(containsString("\"name\":\"patch\""),
+                        containsString("\"age\":41"), containsString("\"email\":\"patch@rest.ru\""))));
+        assertEquals(41, peopleService.findOne(person.getId()).getAge());
+    }
+    
+    @Test
+    public void patchWithStaleVersionIsRejected() throws Exception {
+        Person person = save("stale");
+        String url = "/api/people/" + person.getId();
+        mvc.perform(patch(url).contentType(MediaType.APPLICATION_JSON).content("{\"age\": 30, \"version\": 0}"))
+                .andExpect(status().isOk());
+        
+        mvc.perform(patch(url).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"v0\"").content("{\"age\": 31}"))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(patch(url).contentType(MediaType.APPLICATION_JSON).content("{\"age\": 31, \"version\": 0}"))
+                .andExpect(status().isConflict());
+        mvc.perform(patch(url).contentType(MediaType.APPLICATION_JSON).content("{\"age\": 31}"))
+                .andExpect(status().isPreconditionRequired());
+        mvc.perform(patch("/api/people/999999").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"age\": 31, \"version\": 0}"))
+                .andExpect(status().isNotFound());
+        assertEquals(30, peopleService.findOne(person.getId()).getAge());
+    }
+    
+    @Test
+    public void patchMergesWithCurrentRowNotWithCachedProjection() throws Exception {
+        Person person = save("cached");
+//        Проекция PersonDetails попадает в кэш запросов
+        assertEquals("cached", peopleService.findDetails(person.getId()).getName());
+//        Строку меняют в обход Hibernate: кэш запросов об этом не знает - как отставшая реплика
+        new JdbcTemplate(context.getBean("dataSource", DataSource.class))
+                .update("update person set name = 'fresh', version = 1 where id = ?", person.getId());
+        context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache()
+                .evictEntityData(Person.class, person.getId());
+        assertEquals("cached", peopleService.findDetails(person.getId()).getName());
+        
+        mvc.perform(patch("/api/people/" + person.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"v1\"")
+                        .content("{\"email\": \"fresh@rest.ru\"}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"name\":\"fresh\"")));
+        assertEquals("fresh", peopleService.findOne(person.getId()).getName());
+    }
+    
+    @Test
+    public void weakOrUnknownIfMatchNeverMatches() throws Exception {
+        Person person = save("weak");
+        String url = "/api/people/" + person.getId();
+        for (String ifMatch : new String[]{"W/\"v0\"", "\"0\"", "*", "\"v0\", \"v1\""}) {
+            mvc.perform(patch(url).contentType(MediaType.APPLICATION_JSON)
+                            .header(HttpHeaders.IF_MATCH, ifMatch).content("{\"age\": 31}"))
+                    .andExpect(status().isPreconditionFailed());
+        }
+        assertEquals(20, peopleService.findOne(person.getId()).getAge());
+    }
+    
+    @Test
+    public void showHasStrongEtagUnlessCompressed() throws Exception {
+        Person person = save("etag");
+        String url = "/api/people/" + person.getId();
+        mvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v0\""));
+//        If-None-Match сравнивается нестрого: подходит и сильный, и слабый ETag той же версии
+        mvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, "\"v0\""))
+                .andExpect(status().isNotModified());
+        mvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, "W/\"v0\""))
+                .andExpect(status().isNotModified());
+        
+        MockMvc gzip = MockMvcBuilders.webAppContextSetup(context).addFilters(new GzipResponseFilter(1)).build();
+        gzip.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"v0\""));
+    }
+    
+    @Test
+    public void itemsOfMissingPersonIsNotFound() throws Exception {
+        Person person = save("owner");
+        mvc.perform(get("/api/people/" + person.getId() + "/items"))
+                .andExpect(status().isOk());
+        mvc.perform(get("/api/people/999999/items"))
+                .andExpect(status().isNotFound());
+    }
+    
+    private static Person save(String name) {
+        Person person = new Person(name, 20);
+        person.setEmail(name + "@rest.ru");
+        peopleService.save(person);
+        return person;
+    }
+}
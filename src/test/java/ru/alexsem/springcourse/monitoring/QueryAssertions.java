@@ -0,0 +1,29 @@
+package ru.alexsem.springcourse.monitoring;
+
+import java.util.function.Supplier;
+
+/**
+ * Проверка числа SQL-запросов в тестах:
+ * <pre>
+ * QueryAssertions.assertQueryCount(1, () -> peopleController.index(null, null, null, model));
+ * </pre>
+ */
+public final class QueryAssertions {
+    
+    private QueryAssertions() {
+    }
+    
+    public static <T> T assertQueryCount(int expected, Supplier<T> action) {
+        QueryStats previous = QueryCounter.current();
+        QueryStats stats = QueryCounter.start(0, false);
+        try {
+            T result = action.get();
+            if (stats.getStatements() != expected) {
+                throw new AssertionError("Expected " + expected + " SQL statements but was " + stats);
+            }
+            return result;
+        } finally {
+            QueryCounter.attach(previous);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ru.alexsem.springcourse.monitoring;
+
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryCounterTest {
+    
+    @Test
+    public void measureCountsStatementsAndRestoresPreviousStats() {
+        QueryStats outer = QueryCounter.start(0, false);
+        try {
+            QueryStats inner = QueryCounter.measure(() -> {
+                QueryCounter.current().statementPrepared("select 1");
+                QueryCounter.current().statementPrepared("select 2");
+            });
+            assertEquals(2, inner.getStatements());
+            assertSame(outer, QueryCounter.current());
+            assertEquals(0, outer.getStatements());
+        } finally {
+            QueryCounter.stop();
+        }
+        assertNull(QueryCounter.current());
+    }
+    
+    @Test
+    public void assertQueryCountFailsOnOtherCount() {
+        assertEquals("ok", QueryAssertions.assertQueryCount(1, () -> {
+            QueryCounter.current().statementPrepared("select 1");
+            return "ok";
+        }));
+        try {
+            QueryAssertions.assertQueryCount(1, () -> {
+                QueryCounter.current().statementPrepared("select 1");
+                QueryCounter.current().statementPrepared("select 2");
+                return "ok";
+            });
+            fail("Two statements should not pass a count of one");
+        } catch (AssertionError expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Expected 1 SQL statements but was 2"));
+        }
+        assertNull(QueryCounter.current());
+    }
+    
+    @Test
+    public void budgetExceededThrowsOnTheStatementOverBudget() {
+        QueryStats stats = new QueryStats(2, true);
+        stats.statementPrepared("select 1");
+        stats.statementPrepared("select 2");
+        try {
+            stats.statementPrepared("select 3");
+            fail("Third statement is over the budget of 2");
+        } catch (QueryBudgetExceededException expected) {
+            assertTrue(expected.getMessage().endsWith("select 3"));
+        }
+        assertTrue(stats.isOverBudget());
+    }
+    
+    @Test
+    public void statsSharedWithRequestExecutorCountsEveryStatement() throws InterruptedException {
+        int tasks = 8;
+        int statementsPerTask = 10_000;
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(tasks);
+        executor.setTaskDecorator(new QueryStatsTaskDecorator());
+        executor.initialize();
+        
+        QueryStats stats = QueryCounter.start(0, false);
+        CountDownLatch done = new CountDownLatch(tasks);
+        try {
+//        Как асинхронный обработчик: запросы из потоков пула попадают в счётчики HTTP-запроса
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < statementsPerTask; j++) {
+                        QueryCounter.current().statementPrepared("select 1");
+                        QueryCounter.current().jdbcExecuted(1);
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            QueryCounter.stop();
+            executor.shutdown();
+        }
+        assertEquals(tasks * statementsPerTask, stats.getStatements());
+        assertEquals(tasks * statementsPerTask, Math.round(stats.getJdbcMillis() * TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+}
@@ -0,0 +1,181 @@
+package ru.alexsem.springcourse.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 8 потоков меняют одних и тех же людей (PeopleService.update) и передают друг другу
+ * их вещи (ItemsService.move с OptimisticLockRetry) - как ConcurrentEditBenchmark, но в mvn test.
+ * Настройки повтора - по умолчанию (retry.optimistic.*), как в приложении.
+ */
+public class ConcurrentEditTest {
+    
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 50;
+    private static final int HOT_PEOPLE = 3;
+    private static final int ITEMS_PER_PERSON = 2;
+    private static final int MAX_FAILED_PERCENT = 1;
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static PeopleService peopleService;
+    private static ItemsService itemsService;
+    private static TransactionTemplate readOnly;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        peopleService = context.getBean(PeopleService.class);
+        itemsService = context.getBean(ItemsService.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void concurrentEditsLoseNoUpdates() throws Exception {
+        int[] people = savePeople("edit");
+        long baseVersions = sumVersions(people);
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        
+        race(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int id = people[random.nextInt(people.length)];
+            PersonDetails current = peopleService.findCurrent(id);
+//            Возраст меняется всегда: сохранение без изменений не увеличило бы version
+            Person edited = new Person("Edited" + random.nextInt(1000), current.getAge() + 1);
+            edited.setEmail(current.getEmail());
+            edited.setVersion(current.getVersion());
+            try {
+                peopleService.update(id, edited);
+                saved.incrementAndGet();
+            } catch (OptimisticLockingFailureException e) {
+                conflicts.incrementAndGet();
+            }
+        });
+        
+        assertEquals(THREADS * OPERATIONS_PER_THREAD, saved.get() + conflicts.get());
+//        Без конфликтов тест не проверял бы гонку
+        assertTrue("Threads should conflict", conflicts.get() > 0);
+        assertEquals("Every save bumps the version exactly once", saved.get(), sumVersions(people) - baseVersions);
+    }
+    
+    @Test
+    public void concurrentMovesSucceedWithRetryAndKeepItemsConsistent() throws Exception {
+        int[] people = savePeople("move");
+        List<Integer> items = new ArrayList<>();
+        for (int owner : people) {
+            for (int i = 0; i < ITEMS_PER_PERSON; i++) {
+                items.add(itemsService.add(owner, "Thing" + i).getId());
+            }
+        }
+        
+        AtomicInteger failed = new AtomicInteger();
+        double retriesBefore = retries();
+        
+        race(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int item = items.get(random.nextInt(items.size()));
+            int owner = people[random.nextInt(people.length)];
+            try {
+                assertEquals(owner, itemsService.move(item, owner).getOwner().getId());
+            } catch (OptimisticLockingFailureException e) {
+                failed.incrementAndGet();
+            }
+        });
+        
+//        Настройки повтора по умолчанию: конфликт остаётся после всех попыток лишь у малой доли операций
+        int operations = THREADS * OPERATIONS_PER_THREAD;
+        assertTrue(failed.get() + " of " + operations + " moves failed",
+                failed.get() * 100 <= operations * MAX_FAILED_PERCENT);
+        assertTrue("Moves should be retried", retries() > retriesBefore);
+        
+//        Каждая вещь ровно у одного владельца, а закэшированные owner.items совпадают с таблицей
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        PeopleRepository peopleRepository = context.getBean(PeopleRepository.class);
+        long total = 0;
+        for (int owner : people) {
+            int[] counts = readOnly.execute(status -> new int[]{
+                    peopleRepository.findById(owner).get().getItems().size(),
+                    ((Number) entityManager.createQuery("select count(i) from Item i where i.owner.id = :owner")
+                            .setParameter("owner", owner).getSingleResult()).intValue()});
+            assertEquals("Items of " + owner, counts[1], counts[0]);
+            total += counts[1];
+        }
+        assertEquals(items.size(), total);
+    }
+    
+    //    Все потоки стартуют одновременно, любое исключение из операции - провал теста
+    private static void race(Runnable operation) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    operation.run();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+    }
+    
+    private static double retries() {
+        return context.getBean(MeterRegistry.class).counter("optimistic_lock.retries").count();
+    }
+    
+    private static int[] savePeople(String prefix) {
+        int[] ids = new int[HOT_PEOPLE];
+        for (int i = 0; i < HOT_PEOPLE; i++) {
+            Person person = new Person(prefix + i, 20);
+            person.setEmail(prefix + i + "@concurrent.ru");
+            peopleService.save(person);
+            ids[i] = person.getId();
+        }
+        return ids;
+    }
+    
+    private static long sumVersions(int[] people) {
+        long sum = 0;
+        for (int id : people) {
+            sum += peopleService.findCurrent(id).getVersion();
+        }
+        return sum;
+    }
+}
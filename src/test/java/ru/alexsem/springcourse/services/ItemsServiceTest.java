@@ -0,0 +1,98 @@
+package ru.alexsem.springcourse.services;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.monitoring.QueryCounter;
+import ru.alexsem.springcourse.monitoring.QueryStats;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ItemsServiceTest {
+    
+    private static final String PERSON_ITEMS = Person.class.getName() + ".items";
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static ItemsService itemsService;
+    private static PeopleService peopleService;
+    private static PeopleRepository peopleRepository;
+    private static TransactionTemplate readOnly;
+    private static Cache cache;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        itemsService = context.getBean(ItemsService.class);
+        peopleService = context.getBean(PeopleService.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        cache = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCache();
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void deleteDoesNotLoadOwnerItemsAndEvictsThemFromCache() {
+        Person owner = save("delete");
+        Item phone = itemsService.add(owner.getId(), "Phone");
+        itemsService.add(owner.getId(), "Laptop");
+        assertEquals(List.of("Laptop", "Phone"), itemNames(owner.getId()));
+        assertTrue(cache.containsCollection(PERSON_ITEMS, owner.getId()));
+        
+        QueryStats stats = QueryCounter.measure(() -> itemsService.delete(phone.getId()));
+        
+        assertEquals("owner.items should not be loaded: " + stats, 0, stats.getCollectionFetches());
+        assertFalse(cache.containsCollection(PERSON_ITEMS, owner.getId()));
+        assertEquals(List.of("Laptop"), itemNames(owner.getId()));
+    }
+    
+    @Test
+    public void moveDoesNotLoadOwnersItemsAndEvictsBothFromCache() {
+        Person from = save("from");
+        Person to = save("to");
+        Item phone = itemsService.add(from.getId(), "Phone");
+        itemsService.add(to.getId(), "Laptop");
+        assertEquals(List.of("Phone"), itemNames(from.getId()));
+        assertEquals(List.of("Laptop"), itemNames(to.getId()));
+        
+        QueryStats stats = QueryCounter.measure(() -> itemsService.move(phone.getId(), to.getId()));
+        
+        assertEquals("owners' items should not be loaded: " + stats, 0, stats.getCollectionFetches());
+        assertFalse(cache.containsCollection(PERSON_ITEMS, from.getId()));
+        assertFalse(cache.containsCollection(PERSON_ITEMS, to.getId()));
+        assertEquals(List.of(), itemNames(from.getId()));
+        assertEquals(List.of("Laptop", "Phone"), itemNames(to.getId()));
+    }
+    
+    private static Person save(String name) {
+        Person person = new Person(name, 20);
+        person.setEmail(name + "@items.ru");
+        peopleService.save(person);
+        return person;
+    }
+    
+//    Чтение owner.items кладёт коллекцию в кэш второго уровня
+    private static List<String> itemNames(int ownerId) {
+        return readOnly.execute(status -> peopleRepository.findById(ownerId).orElseThrow().getItems().stream()
+                .map(Item::getItemName).sorted().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,153 @@
+package ru.alexsem.springcourse.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.dao.PersonMoodDAO;
+import ru.alexsem.springcourse.models.Mood;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class MoodUpdateBufferTest {
+    
+    private static final int CAPACITY = 3;
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static MoodUpdateBuffer buffer;
+    
+    @BeforeClass
+    public static void start() {
+//        Запись только по вызову flush() из теста
+        context = TestContexts.start("mood.buffer.capacity=" + CAPACITY, "mood.buffer.batch_size=1000",
+                "mood.buffer.flush_interval_ms=3600000");
+        buffer = context.getBean(MoodUpdateBuffer.class);
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @After
+    public void drain() {
+        buffer.flush();
+    }
+    
+    @Test
+    public void repeatedUpdatesOfOnePersonAreCoalesced() {
+        RecordingMoodDAO dao = new RecordingMoodDAO(batch -> { });
+        MoodUpdateBuffer local = localBuffer(dao);
+        local.offer(1, Mood.SAD);
+        local.offer(1, Mood.ANGRY);
+        local.offer(2, Mood.SAD);
+        local.offer(1, Mood.HAPPY);
+        
+        assertEquals(2, local.flush());
+        assertEquals(List.of(Map.of(1, Mood.HAPPY, 2, Mood.SAD)), dao.batches);
+        assertEquals(0, local.flush());
+    }
+    
+    @Test
+    public void failedBatchDoesNotOverwriteNewerMood() {
+        MoodUpdateBuffer[] local = new MoodUpdateBuffer[1];
+//        Пока пачка пишется, приходит новое значение, и запись падает
+        RecordingMoodDAO failing = new RecordingMoodDAO(batch -> {
+            local[0].offer(1, Mood.WORRIED);
+            throw new IllegalStateException("database is down");
+        });
+        local[0] = localBuffer(failing);
+        local[0].offer(1, Mood.SAD);
+        local[0].offer(2, Mood.SAD);
+        try {
+            local[0].flush();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        
+        failing.onWrite = batch -> { };
+        failing.batches.clear();
+        assertEquals(2, local[0].flush());
+        assertEquals(List.of(Map.of(1, Mood.WORRIED, 2, Mood.SAD)), failing.batches);
+    }
+    
+    @Test
+    public void closeWritesPendingMoods() {
+        RecordingMoodDAO dao = new RecordingMoodDAO(batch -> { });
+        MoodUpdateBuffer local = localBuffer(dao);
+        local.offer(7, Mood.CALM);
+        local.close();
+        assertEquals(List.of(Map.of(7, Mood.CALM)), dao.batches);
+    }
+    
+    @Test
+    public void fullBufferIsServiceUnavailable() throws Exception {
+        MockMvc mvc = MockMvcBuilders.webAppContextSetup(context).build();
+        for (int id = 1; id <= CAPACITY; id++) {
+            mvc.perform(patch("/people/" + id + "/mood").param("mood", "SAD"))
+                    .andExpect(status().isAccepted());
+        }
+        mvc.perform(patch("/people/" + (CAPACITY + 1) + "/mood").param("mood", "SAD"))
+                .andExpect(status().isServiceUnavailable());
+//        Человек, который уже в буфере, - не новое место
+        mvc.perform(patch("/people/1/mood").param("mood", "HAPPY"))
+                .andExpect(status().isAccepted());
+    }
+    
+    @Test
+    public void flushEvictsPersonFromSecondLevelCache() {
+        PeopleService peopleService = context.getBean(PeopleService.class);
+        Person person = new Person("Moody", 30);
+        person.setEmail("moody@mail.ru");
+        peopleService.save(person);
+        Cache cache = context.getBean(EntityManagerFactory.class).getCache();
+        assertEquals(Mood.CALM, peopleService.findOne(person.getId()).getMood());
+        assertTrue(cache.contains(Person.class, person.getId()));
+        
+        buffer.offer(person.getId(), Mood.HAPPY);
+        assertEquals(1, buffer.flush());
+        
+        assertFalse(cache.contains(Person.class, person.getId()));
+        assertEquals(Mood.HAPPY, peopleService.findOne(person.getId()).getMood());
+    }
+    
+    private static MoodUpdateBuffer localBuffer(PersonMoodDAO dao) {
+        return new MoodUpdateBuffer(dao, CAPACITY, 1000, 3_600_000, false, new SimpleMeterRegistry());
+    }
+    
+    private static class RecordingMoodDAO extends PersonMoodDAO {
+        
+        private final List<Map<Integer, Mood>> batches = new ArrayList<>();
+        private Consumer<Map<Integer, Mood>> onWrite;
+        
+        private RecordingMoodDAO(Consumer<Map<Integer, Mood>> onWrite) {
+            super(null);
+            this.onWrite = onWrite;
+        }
+        
+        @Override
+        public void updateMoods(Map<Integer, Mood> moods) {
+            onWrite.accept(moods);
+            batches.add(new HashMap<>(moods));
+        }
+    }
+}
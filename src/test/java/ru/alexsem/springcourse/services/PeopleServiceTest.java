@@ -0,0 +1,232 @@
+package ru.alexsem.springcourse.services;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.dto.KeysetPage;
+import ru.alexsem.springcourse.dto.PersonDetails;
+import ru.alexsem.springcourse.dto.PersonSummary;
+import ru.alexsem.springcourse.models.Item;
+import ru.alexsem.springcourse.models.Person;
+import ru.alexsem.springcourse.monitoring.QueryAssertions;
+import ru.alexsem.springcourse.monitoring.QueryCounter;
+import ru.alexsem.springcourse.monitoring.QueryStats;
+import ru.alexsem.springcourse.repositories.ItemsRepository;
+import ru.alexsem.springcourse.repositories.PeopleRepository;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PeopleServiceTest {
+    
+    private static final String PERSON_ITEMS = Person.class.getName() + ".items";
+    
+    private static AnnotationConfigWebApplicationContext context;
+    private static PeopleService peopleService;
+    private static SessionFactory sessionFactory;
+    private static PeopleRepository peopleRepository;
+    private static ItemsRepository itemsRepository;
+    private static TransactionTemplate transaction;
+    
+    @BeforeClass
+    public static void start() {
+        context = TestContexts.start();
+        peopleService = context.getBean(PeopleService.class);
+        sessionFactory = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class);
+        peopleRepository = context.getBean(PeopleRepository.class);
+        itemsRepository = context.getBean(ItemsRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+    
+    @AfterClass
+    public static void stop() {
+        context.close();
+    }
+    
+    @Test
+    public void updateChangesOnlyFormFieldsAndBumpsVersion() {
+        Person person = save("update");
+        
+        int version = peopleService.update(person.getId(), form(person, "Updated", 40, person.getVersion()));
+        
+        assertEquals(person.getVersion() + 1, version);
+        Person updated = peopleService.findOne(person.getId());
+        assertEquals("Updated", updated.getName());
+        assertEquals(40, updated.getAge());
+        assertEquals(version, updated.getVersion());
+//        Поля не из формы не затираются
+        assertEquals(person.getMood(), updated.getMood());
+        assertEquals(person.getCreatedAt().getTime(), updated.getCreatedAt().getTime());
+    }
+    
+    @Test
+    public void updateWithStaleVersionIsConflict() {
+        Person person = save("stale");
+        peopleService.update(person.getId(), form(person, "First", 30, person.getVersion()));
+        try {
+            peopleService.update(person.getId(), form(person, "Second", 31, person.getVersion()));
+            fail("Stale version should be rejected");
+        } catch (ObjectOptimisticLockingFailureException expected) {
+        }
+        assertEquals("First", peopleService.findDetails(person.getId()).getName());
+    }
+    
+    @Test
+    public void updateOfCachedPersonIsOneStatementAndKeepsOtherCacheEntries() {
+        Person person = save("cached");
+        Person other = save("other");
+//        Оба в кэше второго уровня
+        peopleService.findOne(person.getId());
+        peopleService.findOne(other.getId());
+        
+        QueryStats stats = QueryCounter.measure(() ->
+                peopleService.update(person.getId(), form(person, "Cached", 50, person.getVersion())));
+        
+        assertEquals("only UPDATE, the entity comes from the cache: " + stats, 1, stats.getStatements());
+        assertTrue(sessionFactory.getCache().containsEntity(Person.class, other.getId()));
+        PersonDetails details = peopleService.findDetails(person.getId());
+        assertEquals(person.getVersion() + 1, details.getVersion());
+    }
+    
+    @Test
+    public void previousCursorOnlyWhenSmallerIdsExist() {
+        save("first");
+        save("second");
+        int first = peopleService.findPage(null, null, 1).getContent().get(0).getId();
+        
+        KeysetPage<PersonSummary> fromStart = peopleService.findPage(first - 1, null, 1);
+        assertEquals(first, fromStart.getContent().get(0).getId());
+        assertNull(fromStart.getPreviousCursor());
+        assertNull(peopleService.findPage(Integer.MIN_VALUE, null, 1).getPreviousCursor());
+        
+        KeysetPage<PersonSummary> second = peopleService.findPage(first, null, 1);
+        assertEquals(second.getContent().get(0).getId(), (int) second.getPreviousCursor());
+    }
+    
+    @Test
+    public void cursorsAtIntBoundsDoNotOverflow() {
+        save("bounds");
+        KeysetPage<PersonSummary> afterLast = peopleService.findPage(Integer.MAX_VALUE, null, 2);
+        assertTrue(afterLast.getContent().isEmpty());
+        assertNull(afterLast.getNextCursor());
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), afterLast.getPreviousCursor());
+        
+        KeysetPage<PersonSummary> beforeFirst = peopleService.findPage(null, Integer.MIN_VALUE, 2);
+        assertTrue(beforeFirst.getContent().isEmpty());
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), beforeFirst.getNextCursor());
+        assertNull(beforeFirst.getPreviousCursor());
+    }
+    
+    @Test
+    public void searchMatchesNameOrEmailOnceInIdOrder() {
+        Person both = save("seeker");
+        Person byEmail = new Person("Someone", 20);
+        byEmail.setEmail("seeker.b@mail.ru");
+        peopleService.save(byEmail);
+        Person byName = new Person("Seeker C", 20);
+        byName.setEmail("c@mail.ru");
+        peopleService.save(byName);
+        
+        assertEquals(List.of(both.getId(), byEmail.getId(), byName.getId()), ids(peopleService.search("SEEK", null)));
+        assertEquals(List.of(both.getId(), byEmail.getId()), ids(peopleService.search("seek", 2)));
+//        Спецсимволы LIKE ищутся как обычные символы
+        assertEquals(List.of(), ids(peopleService.search("s%k", null)));
+    }
+    
+    @Test
+    public void deleteOfOnePersonEvictsOnlyItsCacheEntries() {
+        Person person = save("deleted");
+        Person other = save("kept");
+        Item phone = context.getBean(ItemsService.class).add(person.getId(), "Phone");
+//        Человек, его вещи и коллекция вещей - в кэше второго уровня
+        transaction.execute(status -> peopleRepository.findById(person.getId()).orElseThrow().getItems().size());
+        peopleService.findOne(other.getId());
+        assertTrue(sessionFactory.getCache().containsCollection(PERSON_ITEMS, person.getId()));
+        
+        peopleService.delete(person.getId());
+        
+//        Регион person не сброшен целиком: другой человек остался в кэше
+        assertTrue(sessionFactory.getCache().containsEntity(Person.class, other.getId()));
+        assertNull(peopleService.findOne(person.getId()));
+        assertNull(peopleService.findDetails(person.getId()));
+        assertNull(itemsRepository.findById(phone.getId()).orElseThrow().getOwner());
+//        Повторное удаление ничего не делает
+        peopleService.delete(person.getId());
+    }
+    
+    @Test
+    public void bulkDeleteLeavesNoStaleCacheOrPersistenceContext() {
+        Person person = save("bulk");
+        Item phone = context.getBean(ItemsService.class).add(person.getId(), "Phone");
+//        В кэше второго уровня, кэше запросов и (ниже) в persistence context транзакции
+        peopleService.findDetails(person.getId());
+        assertEquals(person.getId(), itemsRepository.findById(phone.getId()).orElseThrow().getOwner().getId());
+        
+        transaction.execute(status -> {
+            peopleRepository.findById(person.getId()).orElseThrow();
+            assertEquals(1, peopleService.deleteAll(List.of(person.getId())));
+            assertFalse(peopleRepository.findById(person.getId()).isPresent());
+            return null;
+        });
+        
+        assertFalse(sessionFactory.getCache().containsEntity(Person.class, person.getId()));
+        assertNull(peopleService.findDetails(person.getId()));
+        assertNull(itemsRepository.findById(phone.getId()).orElseThrow().getOwner());
+    }
+    
+    @Test
+    public void pageWithItemsTakesTwoStatementsForAnyPageSize() {
+        peopleService.importPeople(IntStream.range(0, 120).mapToObj(i -> {
+            Person person = new Person("WithItems" + i, 20);
+            person.setEmail("with.items" + i + "@mail.ru");
+            person.setItems(List.of(new Item("Phone", person), new Item("Laptop", person), new Item("TV", person)));
+            return person;
+        }).iterator());
+        
+//        Страница id и люди с вещами одним join fetch - без N+1 на вещи каждого
+        for (int size : new int[]{10, 100}) {
+            sessionFactory.getCache().evictAllRegions();
+            KeysetPage<Person> page = QueryAssertions.assertQueryCount(2, () -> {
+                KeysetPage<Person> people = peopleService.findPageWithItems(null, null, size);
+                people.getContent().forEach(person -> person.getItems().size());
+                return people;
+            });
+            assertEquals(size, page.getContent().size());
+            assertEquals(List.of(3), page.getContent().stream()
+                    .filter(person -> person.getName().startsWith("WithItems"))
+                    .map(person -> person.getItems().size()).distinct().collect(Collectors.toList()));
+        }
+    }
+    
+    private static Person save(String name) {
+        Person person = new Person(name, 20);
+        person.setEmail(name + "@mail.ru");
+        peopleService.save(person);
+        return peopleService.findOne(person.getId());
+    }
+    
+    private static List<Integer> ids(List<PersonSummary> people) {
+        return people.stream().map(PersonSummary::getId).collect(Collectors.toList());
+    }
+    
+    private static Person form(Person person, String name, int age, int version) {
+        Person form = new Person(name, age);
+        form.setEmail(person.getEmail());
+        form.setVersion(version);
+        return form;
+    }
+}
@@ -0,0 +1,152 @@
+package ru.alexsem.springcourse.services;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ru.alexsem.springcourse.TestContexts;
+import ru.alexsem.springcourse.models.Person;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Уникальность email держит индекс person_email_key, а не проверка в коде:
+ * одновременные save и upsertByEmail с одним email не создают дубликатов.
+ * На H2 и на встроенном PostgreSQL - у них разный SQL upsert (PersonUpsertDAO).
+ */
+public class UniqueEmailTest {
+    
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 100;
+    private static final int EMAILS = 10;
+    
+    private static AnnotationConfigWebApplicationContext h2;
+    private static AnnotationConfigWebApplicationContext postgres;
+    
+    @BeforeClass
+    public static void start() {
+        h2 = TestContexts.start();
+        postgres = TestContexts.startPostgres();
+    }
+    
+    @AfterClass
+    public static void stop() {
+        h2.close();
+        postgres.close();
+    }
+    
+    @Test
+    public void h2UpsertInsertsThenUpdates() {
+        assertUpsertInsertsThenUpdates(h2);
+    }
+    
+    @Test
+    public void postgresUpsertInsertsThenUpdates() {
+        assertUpsertInsertsThenUpdates(postgres);
+    }
+    
+    @Test
+    public void h2ConcurrentSavesAndUpsertsKeepOneRowPerEmail() throws Exception {
+        assertNoDuplicatesUnderRace(h2);
+    }
+    
+    @Test
+    public void postgresConcurrentSavesAndUpsertsKeepOneRowPerEmail() throws Exception {
+        assertNoDuplicatesUnderRace(postgres);
+    }
+    
+    private static void assertUpsertInsertsThenUpdates(AnnotationConfigWebApplicationContext context) {
+        PeopleService peopleService = context.getBean(PeopleService.class);
+        
+        int id = peopleService.upsertByEmail(person("Tom", 25, "upsert@mail.ru"));
+        Person inserted = peopleService.findOne(id);
+        assertEquals("Tom", inserted.getName());
+        assertEquals(0, inserted.getVersion());
+        
+        assertEquals(id, peopleService.upsertByEmail(person("Thomas", 26, "upsert@mail.ru")));
+//        Кэш второго уровня сброшен upsert-ом - читаем новую строку
+        Person updated = peopleService.findOne(id);
+        assertEquals("Thomas", updated.getName());
+        assertEquals(26, updated.getAge());
+        assertEquals(1, updated.getVersion());
+        assertEquals(inserted.getCreatedAt().getTime(), updated.getCreatedAt().getTime());
+        
+        try {
+            peopleService.save(person("Copy", 30, "upsert@mail.ru"));
+            fail("Duplicate email should be rejected");
+        } catch (DuplicateEmailException expected) {
+        }
+    }
+    
+    private static void assertNoDuplicatesUnderRace(AnnotationConfigWebApplicationContext context) throws Exception {
+        PeopleService peopleService = context.getBean(PeopleService.class);
+        AtomicInteger rejected = new AtomicInteger();
+        Queue<String> wrongIds = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String email = "race" + random.nextInt(EMAILS) + "@mail.ru";
+                    Person person = person("Race" + random.nextInt(1000), 18 + random.nextInt(60), email);
+                    if (random.nextBoolean()) {
+                        int id = peopleService.upsertByEmail(person);
+                        if (!email.equals(peopleService.findOne(id).getEmail())) {
+                            wrongIds.add(email + " -> " + id);
+                        }
+                    } else {
+                        try {
+                            peopleService.save(person);
+                        } catch (DuplicateEmailException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+//        Любое другое исключение (дедлок, нарушение индекса мимо DuplicateEmailException) - провал
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        List<?> duplicated = new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                .execute(status -> entityManager
+                        .createQuery("select p.email from Person p where p.email like 'race%' " +
+                                     "group by p.email having count(p) > 1")
+                        .getResultList());
+        assertTrue("Duplicate emails: " + duplicated, duplicated.isEmpty());
+        assertTrue("upsertByEmail returned someone else: " + wrongIds, wrongIds.isEmpty());
+        assertTrue("save should meet existing emails", rejected.get() > 0);
+    }
+    
+    private static Person person(String name, int age, String email) {
+        Person person = new Person(name, age);
+        person.setEmail(email);
+        return person;
+    }
+}
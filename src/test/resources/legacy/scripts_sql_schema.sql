@@ -0,0 +1,43 @@
+-- Схема БД, созданной вручную до Flyway: таблица person (её создания в SQL/Scripts.sql нет,
+-- id - identity, как у Item) и всё из SQL/Scripts.sql до перехода на миграции.
+-- Для FlywayMigrationsTest: такая БД помечается baseline и доводится миграциями V1_1 и дальше
+CREATE TABLE Person
+(
+    id    INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name  VARCHAR(100) NOT NULL,
+    age   INT CHECK (age >= 0),
+    email VARCHAR(100)
+);
+
+INSERT INTO person (name, age, email)
+VALUES ('Tom', 25, 'tom@mail.ru');
+INSERT INTO person (name, age, email)
+VALUES ('Kot', 35, 'kot@mail.ru');
+INSERT INTO person (name, age, email)
+VALUES ('Tim', 27, 'tim@mail.ru');
+INSERT INTO person (name, age, email)
+VALUES ('Nik', 19, 'tnik@mail.ru');
+INSERT INTO person (name, age, email)
+VALUES ('Bob', 40, 'bob@mail.ru');
+
+CREATE TABLE Item
+(
+    id        INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    person_id INT          REFERENCES person (id) ON DELETE SET NULL,
+    item_name VARCHAR(100) NOT NULL
+);
+
+INSERT INTO Item (person_id, item_name)
+VALUES (5, 'Airpods');
+INSERT INTO Item (person_id, item_name)
+VALUES (5, 'Playstation');
+INSERT INTO Item (person_id, item_name)
+VALUES (5, 'TV');
+
+ALTER TABLE person
+    ADD COLUMN date_of_birth DATE;
+
+ALTER TABLE person
+    ADD COLUMN created_at TIMESTAMP;
+
+ALTER TABLE person ADD COLUMN mood varchar;